@@ -0,0 +1,41 @@
+package com.ryan.vault.bench;
+
+import com.ryan.vault.tools.FakeVaultServer;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Shared set-up: a fake Vault holding bench/s0 .. bench/s{n-1}, each with username/password/url. */
+final class BenchSupport {
+
+    static final String MOUNT = "secret";
+
+    private BenchSupport() {}
+
+    static FakeVaultServer startVault(int paths) throws IOException {
+        FakeVaultServer server = FakeVaultServer.start(MOUNT);
+        for (int i = 0; i < paths; i++) {
+            server.putSecret(path(i), document(i));
+        }
+        return server;
+    }
+
+    static String path(int i) {
+        return "bench/s" + i;
+    }
+
+    static String[] paths(int n) {
+        String[] paths = new String[n];
+        for (int i = 0; i < n; i++) paths[i] = path(i);
+        return paths;
+    }
+
+    private static Map<String, String> document(int i) {
+        Map<String, String> doc = new LinkedHashMap<String, String>();
+        doc.put("username", "svc-" + i);
+        doc.put("password", "p@ss-" + i + "-0123456789abcdef");
+        doc.put("url", "jdbc:postgresql://db-" + i + ".internal:5432/app");
+        return doc;
+    }
+}
@@ -0,0 +1,104 @@
+package com.ryan.vault.bench;
+
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretsClient;
+import com.ryan.vault.secrets.SecretsClientFactory;
+import com.ryan.vault.tools.FakeVaultServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache hits: every read is served from the Vault client's cache, so this measures the
+ * hot path (cache lookup, lock contention, metrics) at 1, 4, 16 and 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class CachedReadBenchmark {
+
+    @Param({"lru", "concurrent", "offheap"})
+    public String cacheImpl;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Param({"64"})
+    public int paths;
+
+    private FakeVaultServer server;
+    private SecretsClient client;
+    private String[] pathNames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = BenchSupport.startVault(paths);
+        Properties p = server.clientProperties();
+        p.setProperty("secrets.cache.impl", cacheImpl);
+        p.setProperty("secrets.cache.ttlSeconds", "3600");
+        p.setProperty("secrets.cache.maxEntries", String.valueOf(paths * 2));
+        p.setProperty("secrets.metrics", String.valueOf(metrics));
+        client = SecretsClientFactory.create(p);
+        pathNames = BenchSupport.paths(paths);
+        for (String path : pathNames) client.getRequired(path, "password"); // warm the cache
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    /** Each thread walks the paths in its own order. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    private String read(Cursor cursor) throws SecretException {
+        if (cursor.next == pathNames.length) cursor.next = 0;
+        String path = pathNames[cursor.next++];
+        return client.getRequired(path, "password");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads01(Cursor cursor) throws SecretException {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threads04(Cursor cursor) throws SecretException {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String threads16(Cursor cursor) throws SecretException {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String threads64(Cursor cursor) throws SecretException {
+        return read(cursor);
+    }
+}
@@ -0,0 +1,72 @@
+package com.ryan.vault.bench;
+
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretsClient;
+import com.ryan.vault.secrets.SecretsClientFactory;
+import com.ryan.vault.tools.FakeVaultServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache misses: the cache is off (ttl 0), so every read is an HTTP round trip to the fake
+ * Vault plus JSON parsing. Compares the HTTP transports; with zero server latency the score
+ * is the client-side cost of one KV read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class ColdReadBenchmark {
+
+    @Param({"pooled", "urlconnection"})
+    public String transport;
+
+    @Param({"0"})
+    public long vaultLatencyMicros;
+
+    private FakeVaultServer server;
+    private SecretsClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = BenchSupport.startVault(1).latencyMicros(vaultLatencyMicros);
+        Properties p = server.clientProperties();
+        p.setProperty("secrets.cache.ttlSeconds", "0");
+        p.setProperty("vault.http.transport", transport);
+        client = SecretsClientFactory.create(p);
+        client.getRequired(BenchSupport.path(0), "password"); // login outside the measurement
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String getRequired() throws SecretException {
+        return client.getRequired(BenchSupport.path(0), "password");
+    }
+
+    @Benchmark
+    public Map<String, String> getAll() throws SecretException {
+        return client.getAll(BenchSupport.path(0));
+    }
+}
@@ -0,0 +1,94 @@
+package com.ryan.vault.bench;
+
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretNotFoundException;
+import com.ryan.vault.secrets.providers.EnvSecretsClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EnvSecretsClient.getRequired: the indexed lookup against the previous implementation
+ * (normalize path + "_" + key, then System.getenv on every call), kept here as legacyGetRequired.
+ * Run with -prof gc to compare allocations per call as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnvLookupBenchmark {
+
+    private EnvSecretsClient indexed;
+    private EnvSecretsClient indexedWithPrefix;
+    private String path;
+    private String key;
+    private String prefixedPath; // same variable, read through secrets.env.prefix
+    private String prefixedKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pickEnvironmentVariable();
+        indexed = new EnvSecretsClient(new Properties());
+
+        Properties prefixed = new Properties();
+        prefixed.setProperty("secrets.env.prefix", path.toUpperCase() + "_");
+        indexedWithPrefix = new EnvSecretsClient(prefixed);
+        prefixedPath = key.substring(0, key.indexOf('_'));
+        prefixedKey = key.substring(prefixedPath.length() + 1);
+    }
+
+    /** A variable named A_B_C (e.g. JAVA_HOME_X, or A_B_C set for the run): path "a", key "b_c". */
+    private void pickEnvironmentVariable() throws IOException {
+        for (Map.Entry<String, String> e : System.getenv().entrySet()) {
+            String name = e.getKey();
+            int first = name.indexOf('_');
+            int second = first < 0 ? -1 : name.indexOf('_', first + 1);
+            if (first > 0 && second > first + 1 && second < name.length() - 1
+                    && name.equals(name.toUpperCase()) && !e.getValue().trim().isEmpty()) {
+                path = name.substring(0, first).toLowerCase();
+                key = name.substring(first + 1).toLowerCase();
+                return;
+            }
+        }
+        throw new IOException("No environment variable of the form A_B_C to benchmark with (export one, e.g. BENCH_DB_PASSWORD=x)");
+    }
+
+    @Benchmark
+    public String legacyGetRequired() throws SecretException {
+        String env = (path + "_" + key)
+                .replace("/", "_")
+                .replace("-", "_")
+                .replace(".", "_")
+                .toUpperCase();
+        String value = System.getenv(env);
+        if (value == null || value.trim().isEmpty()) {
+            throw new SecretNotFoundException("Missing environment secret: " + env);
+        }
+        return value;
+    }
+
+    @Benchmark
+    public String indexedGetRequired() throws SecretException {
+        return indexed.getRequired(path, key);
+    }
+
+    @Benchmark
+    public String indexedWithPrefixGetRequired() throws SecretException {
+        return indexedWithPrefix.getRequired(prefixedPath, prefixedKey);
+    }
+}
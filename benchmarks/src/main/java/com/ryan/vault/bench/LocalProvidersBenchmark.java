@@ -0,0 +1,111 @@
+package com.ryan.vault.bench;
+
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretsClient;
+import com.ryan.vault.secrets.SecretsClientFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory providers: env (secrets.provider=env) and properties file
+ * (secrets.provider=properties), for getRequired and getAll.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalProvidersBenchmark {
+
+    private static final int FILE_ENTRIES = 500;
+
+    private SecretsClient env;
+    private String envPath;
+    private String envKey;
+
+    private File secretsFile;
+    private SecretsClient properties;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties envConfig = new Properties();
+        envConfig.setProperty("secrets.provider", "env");
+        env = SecretsClientFactory.create(envConfig);
+        pickEnvironmentVariable();
+
+        secretsFile = File.createTempFile("bench-secrets", ".properties");
+        Properties secrets = new Properties();
+        for (int i = 0; i < FILE_ENTRIES; i++) {
+            secrets.setProperty(BenchSupport.path(i) + ".username", "svc-" + i);
+            secrets.setProperty(BenchSupport.path(i) + ".password", " p@ss-" + i + " ");
+        }
+        try (OutputStream out = new FileOutputStream(secretsFile)) {
+            secrets.store(out, null);
+        }
+        Properties fileConfig = new Properties();
+        fileConfig.setProperty("secrets.provider", "properties");
+        fileConfig.setProperty("secrets.file.path", secretsFile.getAbsolutePath());
+        properties = SecretsClientFactory.create(fileConfig);
+    }
+
+    /** Any variable named A_B (e.g. JAVA_HOME) works: it is read back as path "a", key "b". */
+    private void pickEnvironmentVariable() throws IOException {
+        for (Map.Entry<String, String> e : System.getenv().entrySet()) {
+            String name = e.getKey();
+            int underscore = name.indexOf('_');
+            if (underscore > 0 && underscore < name.length() - 1 && name.equals(name.toUpperCase())
+                    && !e.getValue().trim().isEmpty()) {
+                envPath = name.substring(0, underscore).toLowerCase();
+                envKey = name.substring(underscore + 1).toLowerCase();
+                return;
+            }
+        }
+        throw new IOException("No environment variable of the form A_B to benchmark with");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        env.close();
+        properties.close();
+        if (!secretsFile.delete()) secretsFile.deleteOnExit();
+    }
+
+    @Benchmark
+    public String envGetRequired() throws SecretException {
+        return env.getRequired(envPath, envKey);
+    }
+
+    @Benchmark
+    public Map<String, String> envGetAll() throws SecretException {
+        return env.getAll(envPath);
+    }
+
+    @Benchmark
+    public String propertiesGetRequired() throws SecretException {
+        return properties.getRequired(BenchSupport.path(FILE_ENTRIES / 2), "password");
+    }
+
+    @Benchmark
+    public Map<String, String> propertiesGetAll() throws SecretException {
+        return properties.getAll(BenchSupport.path(FILE_ENTRIES / 2));
+    }
+}
@@ -0,0 +1,107 @@
+package com.ryan.vault.bench;
+
+import com.ryan.vault.secrets.DaemonThreadFactory;
+import com.ryan.vault.secrets.SecretsClient;
+import com.ryan.vault.secrets.SecretsClientFactory;
+import com.ryan.vault.tools.FakeVaultServer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TTL-expiry stampede: {@code callers} threads ask for the same path at the same moment while
+ * it is not in the cache, as when a hot entry expires under load. The score is the time
+ * until all callers have their value; the vaultReads / stampedes counters show how many
+ * Vault reads one stampede caused (1 when concurrent misses are coalesced).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class StampedeBenchmark {
+
+    @Param({"32"})
+    public int callers;
+
+    @Param({"2000"})
+    public long vaultLatencyMicros;
+
+    private FakeVaultServer server;
+    private ExecutorService pool;
+    private SecretsClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = BenchSupport.startVault(2).latencyMicros(vaultLatencyMicros);
+        pool = Executors.newFixedThreadPool(callers, new DaemonThreadFactory("bench-caller"));
+    }
+
+    /** A new client per stampede = an empty cache; it is logged in before the measured part. */
+    @Setup(Level.Invocation)
+    public void freshClient() throws Exception {
+        Properties p = server.clientProperties();
+        p.setProperty("secrets.cache.ttlSeconds", "300");
+        client = SecretsClientFactory.create(p);
+        client.getRequired(BenchSupport.path(1), "password");
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeClient() {
+        client.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+        server.close();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class ReadCounters {
+        public long stampedes;
+        public long vaultReads;
+    }
+
+    @Benchmark
+    public void expiredHotPath(ReadCounters counters) throws Exception {
+        final String path = BenchSupport.path(0);
+        final CountDownLatch go = new CountDownLatch(1);
+        long readsBefore = server.kvReadCount();
+
+        List<Future<String>> reads = new ArrayList<Future<String>>(callers);
+        for (int i = 0; i < callers; i++) {
+            reads.add(pool.submit(() -> {
+                go.await();
+                return client.getRequired(path, "password");
+            }));
+        }
+        go.countDown();
+        for (Future<String> read : reads) read.get();
+
+        counters.stampedes++;
+        counters.vaultReads += server.kvReadCount() - readsBefore;
+    }
+}
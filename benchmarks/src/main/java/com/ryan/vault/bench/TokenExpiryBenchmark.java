@@ -0,0 +1,68 @@
+package com.ryan.vault.bench;
+
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretsClient;
+import com.ryan.vault.secrets.SecretsClientFactory;
+import com.ryan.vault.tools.FakeVaultServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-expiry recovery: Vault has dropped the client's token (revoked, or expired before the
+ * renewal caught it), so the next read gets HTTP 403, logs in again and retries.
+ * Compare with validToken, the same uncached read without the 403.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class TokenExpiryBenchmark {
+
+    @Param({"0", "1000"})
+    public long vaultLatencyMicros;
+
+    private FakeVaultServer server;
+    private SecretsClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = BenchSupport.startVault(1).latencyMicros(vaultLatencyMicros);
+        Properties p = server.clientProperties();
+        p.setProperty("secrets.cache.ttlSeconds", "0");
+        client = SecretsClientFactory.create(p);
+        client.getRequired(BenchSupport.path(0), "password");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String expiredToken() throws SecretException {
+        server.expireAllTokens();
+        return client.getRequired(BenchSupport.path(0), "password");
+    }
+
+    @Benchmark
+    public String validToken() throws SecretException {
+        return client.getRequired(BenchSupport.path(0), "password");
+    }
+}
@@ -4,18 +4,31 @@ import com.ryan.vault.secrets.*;
 import com.ryan.vault.secrets.Config;
 import com.ryan.vault.secrets.SecretsClient;
 import com.ryan.vault.secrets.SecretsClientFactory;
+import com.ryan.vault.secrets.providers.ChainSecretsClient;
+import com.ryan.vault.secrets.providers.PreloadReport;
+import com.ryan.vault.secrets.providers.VaultAppRoleKvV2Client;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Demo program (Java 8, non-Spring):
  *  - Reads config from c:/temp/vault_token.properties by default
  *  - Uses factory to create the secrets provider
  *  - Fetches a secret value (static password/key)
+ *  - Prints the cache warm-up timings when secrets.preload is set
+ *  - Prints the client metrics when secrets.metrics=true, or the per-provider stats of a chain
+ *  - With --load [configFile], runs a load test instead: com.ryan.vault.tools.LoadGenerator,
+ *    from the tools module, which must be on the class path
  */
 public class Main {
 
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "--load".equals(args[0])) {
+            runLoadTest(args.length > 1 ? args[1] : "./vault_token.properties");
+            return;
+        }
         String configFile = args.length > 0 ? args[0] : "./vault_token.properties";
         //String configFile = args.length > 0 ? args[0] : "c:/Temp/vault_token.properties";
         String secretPath  = args.length > 1 ? args[1] : "myapp/config";
@@ -26,10 +39,48 @@ public class Main {
         SecretsClient secrets = null;
         try {
             secrets = SecretsClientFactory.create(p);
+            printPreloadReport(secrets);
             String value = secrets.getRequired(secretPath, secretKey);
             System.out.println("Secret retrieved for " + secretPath + "." + secretKey + " (length=" + value.length() + ")");
+            if (secrets instanceof InstrumentedSecretsClient) {
+                System.out.print(((InstrumentedSecretsClient) secrets).metrics());
+            } else if (secrets instanceof ChainSecretsClient) {
+                System.out.print(((ChainSecretsClient) secrets).stats());
+            }
         } finally {
             if (secrets != null) secrets.close();
         }
     }
+
+    /** The load generator lives in the tools jar, so the library jar ships no fake Vault. */
+    private static void runLoadTest(String configFile) throws Exception {
+        Class<?> generator;
+        try {
+            generator = Class.forName("com.ryan.vault.tools.LoadGenerator");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("--load needs the tools jar (vault-approle-java8-tools) on the class path", e);
+        }
+        try {
+            generator.getMethod("run", String.class).invoke(null, configFile);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw (Error) cause;
+        }
+    }
+
+    /** Prints per-path warm-up timings when secrets.preload is configured. */
+    private static void printPreloadReport(SecretsClient secrets) {
+        if (secrets instanceof InstrumentedSecretsClient) secrets = ((InstrumentedSecretsClient) secrets).delegate();
+        if (secrets instanceof ChainSecretsClient) {
+            for (SecretsClient member : ((ChainSecretsClient) secrets).members()) {
+                if (member instanceof VaultAppRoleKvV2Client) secrets = member;
+            }
+        }
+        if (!(secrets instanceof VaultAppRoleKvV2Client)) return;
+        CompletableFuture<PreloadReport> warmUp = ((VaultAppRoleKvV2Client) secrets).lastPreload();
+        if (warmUp != null && warmUp.isDone() && !warmUp.isCompletedExceptionally()) {
+            System.out.print(warmUp.join());
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package com.ryan.vault.app;
+
+import com.ryan.vault.secrets.AsyncSecretsClient;
+import com.ryan.vault.secrets.Config;
+import com.ryan.vault.secrets.SecretsClientFactory;
+import com.ryan.vault.secrets.providers.LocalAgentServer;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Node-local secrets agent (one per host):
+ *  - Reads the same properties file as the applications (default ./vault_token.properties)
+ *  - Creates the backend from secrets.agent.provider (default vault), i.e. one login and one cache
+ *  - Serves it on secrets.agent.address until the process is stopped
+ * Applications then use secrets.provider=local-agent.
+ */
+public class SecretsAgent {
+
+    public static void main(String[] args) throws Exception {
+        String configFile = args.length > 0 ? args[0] : "./vault_token.properties";
+        Properties p = Config.load(configFile);
+
+        String provider = Config.get(p, "secrets.agent.provider", "vault");
+        if ("local-agent".equalsIgnoreCase(provider)) {
+            throw new IllegalArgumentException("secrets.agent.provider cannot be local-agent");
+        }
+        Properties backendProps = new Properties();
+        backendProps.putAll(p);
+        backendProps.setProperty("secrets.provider", provider);
+
+        final AsyncSecretsClient backend = SecretsClientFactory.createAsync(backendProps);
+        final LocalAgentServer agent;
+        try {
+            agent = LocalAgentServer.start(p, backend);
+        } catch (Exception e) {
+            backend.close();
+            throw e;
+        }
+        System.out.println("Secrets agent (" + provider + ") listening on " + agent.address());
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            agent.close();
+            backend.close();
+            stopped.countDown();
+        }, "secrets-agent-shutdown"));
+        stopped.await();
+    }
+}
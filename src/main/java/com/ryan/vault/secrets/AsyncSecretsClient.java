@@ -0,0 +1,37 @@
+package com.ryan.vault.secrets;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link SecretsClient} for callers that must not block
+ * (e.g. Netty event loops).
+ *
+ * Contract:
+ *  - a cache hit returns an already completed future, on the caller's thread, with no thread hop
+ *  - a miss never does I/O on the caller's thread: it completes later on the provider's own pool
+ *  - failures complete the future exceptionally with the same {@link SecretException}
+ *    (e.g. {@link SecretNotFoundException}) the blocking call would throw
+ */
+public interface AsyncSecretsClient extends SecretsClient {
+
+    CompletableFuture<String> getRequiredAsync(String path, String key);
+
+    CompletableFuture<Map<String, String>> getAllAsync(String path);
+
+    /** A blocking lookup that is known to be cheap (in-memory). */
+    interface SecretCall<T> {
+        T call() throws SecretException;
+    }
+
+    /** Runs an in-memory lookup on the caller's thread and returns it as a completed future. */
+    static <T> CompletableFuture<T> completedNow(SecretCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            future.complete(call.call());
+        } catch (SecretException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
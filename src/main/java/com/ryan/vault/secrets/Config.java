@@ -2,6 +2,8 @@ package com.ryan.vault.secrets;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /** Simple .properties loader + helpers. */
@@ -45,4 +47,27 @@ public final class Config {
         if (v == null || v.trim().isEmpty()) return def;
         return Long.parseLong(v.trim());
     }
+
+    public static double getDouble(Properties p, String key, double def) {
+        String v = p.getProperty(key);
+        if (v == null || v.trim().isEmpty()) return def;
+        return Double.parseDouble(v.trim());
+    }
+
+    public static boolean getBoolean(Properties p, String key, boolean def) {
+        String v = p.getProperty(key);
+        if (v == null || v.trim().isEmpty()) return def;
+        return Boolean.parseBoolean(v.trim());
+    }
+
+    /** Comma-separated list, trimmed, empty items dropped. Missing property = empty list. */
+    public static List<String> getList(Properties p, String key) {
+        List<String> items = new ArrayList<String>();
+        String v = p.getProperty(key);
+        if (v == null) return items;
+        for (String item : v.split(",")) {
+            if (!item.trim().isEmpty()) items.add(item.trim());
+        }
+        return items;
+    }
 }
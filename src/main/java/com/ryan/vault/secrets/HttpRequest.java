@@ -0,0 +1,63 @@
+package com.ryan.vault.secrets;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One HTTP request sent through an {@link HttpTransport}.
+ * Example:
+ *    HttpRequest.post(url, json).header("Content-Type", "application/json")
+ */
+public final class HttpRequest {
+
+    private final String method;
+    private final String url;
+    private final byte[] body;
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private int connectTimeoutMs; // 0 = transport default
+    private int readTimeoutMs; // 0 = transport default
+
+    private HttpRequest(String method, String url, byte[] body) {
+        this.method = method;
+        this.url = url;
+        this.body = body;
+    }
+
+    public static HttpRequest get(String url) {
+        return new HttpRequest("GET", url, null);
+    }
+
+    public static HttpRequest post(String url, byte[] body) {
+        return new HttpRequest("POST", url, body);
+    }
+
+    public static HttpRequest post(String url, String jsonBody) {
+        return post(url, jsonBody.getBytes(StandardCharsets.UTF_8)).header("Content-Type", "application/json");
+    }
+
+    public HttpRequest header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /** Overrides the transport's connect timeout (TLS handshake included) for this request only. */
+    public HttpRequest connectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        return this;
+    }
+
+    /** Overrides the transport's read timeout for this request only. */
+    public HttpRequest readTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+        return this;
+    }
+
+    public String method() { return method; }
+    public String url() { return url; }
+    public byte[] body() { return body; }
+    public Map<String, String> headers() { return Collections.unmodifiableMap(headers); }
+    public int connectTimeoutMs() { return connectTimeoutMs; }
+    public int readTimeoutMs() { return readTimeoutMs; }
+}
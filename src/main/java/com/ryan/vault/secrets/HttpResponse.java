@@ -0,0 +1,27 @@
+package com.ryan.vault.secrets;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response of an {@link HttpTransport}. Always close it (try-with-resources):
+ * closing a fully read response is what lets a pooled transport reuse the connection.
+ */
+public interface HttpResponse extends AutoCloseable {
+
+    int status();
+
+    /** Header value (case-insensitive name), or null. */
+    String header(String name);
+
+    /** The response body (the error body for non-2xx statuses). Never null. */
+    InputStream body() throws IOException;
+
+    /** Reads the whole body as UTF-8, byte-exact. */
+    default String bodyAsString() throws IOException {
+        return HttpUtil.readUtf8(body());
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,43 @@
+package com.ryan.vault.secrets;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * How the Vault client talks HTTP(S). Lets us swap the JDK's HttpURLConnection for a pooled,
+ * keep-alive transport without touching the Vault logic.
+ *
+ * Property: vault.http.transport = urlconnection | pooled
+ * - urlconnection: {@link UrlConnectionTransport}, plain HttpURLConnection with the JDK's own
+ *   keep-alive cache, proxy settings and redirects (default)
+ * - pooled: {@link PooledHttpTransport}, own connection pool with TLS session reuse (opt-in;
+ *   no proxy support, no redirects)
+ */
+public interface HttpTransport extends AutoCloseable {
+
+    HttpResponse send(HttpRequest request) throws IOException;
+
+    /** Closes pooled connections. */
+    @Override
+    void close();
+
+    static HttpTransport create(Properties p) {
+        String kind = Config.get(p, "vault.http.transport", "urlconnection").toLowerCase();
+        int timeoutMs = Config.getInt(p, "vault.timeoutMs", 5000);
+        int connectTimeoutMs = Config.getInt(p, "vault.http.connectTimeoutMs", timeoutMs);
+        int readTimeoutMs = Config.getInt(p, "vault.http.readTimeoutMs", timeoutMs);
+
+        if ("urlconnection".equals(kind)) {
+            return new UrlConnectionTransport(connectTimeoutMs, readTimeoutMs);
+        }
+        if ("pooled".equals(kind)) {
+            return new PooledHttpTransport(
+                    connectTimeoutMs,
+                    readTimeoutMs,
+                    Config.getInt(p, "vault.http.poolAcquireTimeoutMs", timeoutMs),
+                    Config.getInt(p, "vault.http.maxConnections", 16),
+                    Config.getLong(p, "vault.http.idleTimeoutMs", 60000L));
+        }
+        throw new IllegalArgumentException("Unknown vault.http.transport: " + kind);
+    }
+}
@@ -1,20 +1,17 @@
 package com.ryan.vault.secrets;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public final class HttpUtil {
     private HttpUtil() {}
 
+    /** Whole stream as UTF-8 text, byte-exact (line breaks are kept). */
     public static String readAll(InputStream in) throws Exception {
-        if (in == null) return "";
-        BufferedReader br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while ((line = br.readLine()) != null) sb.append(line);
-        return sb.toString();
+        return readUtf8(in);
     }
 
     public static String readResponseBody(HttpURLConnection conn) throws Exception {
@@ -22,4 +19,29 @@ public final class HttpUtil {
         InputStream in = (code >= 200 && code < 300) ? conn.getInputStream() : conn.getErrorStream();
         return readAll(in);
     }
+
+    /**
+     * Reads the stream to the end and decodes it as UTF-8 (line breaks preserved).
+     * Bodies may hold tokens or secrets: the byte buffers are zeroed before returning,
+     * so only the returned String is left for the GC.
+     */
+    public static String readUtf8(InputStream in) throws IOException {
+        if (in == null) return "";
+        byte[] buf = new byte[8192];
+        int size = 0;
+        try {
+            int n;
+            while ((n = in.read(buf, size, buf.length - size)) != -1) {
+                size += n;
+                if (size == buf.length) {
+                    byte[] bigger = Arrays.copyOf(buf, buf.length * 2);
+                    Arrays.fill(buf, (byte) 0);
+                    buf = bigger;
+                }
+            }
+            return new String(buf, 0, size, StandardCharsets.UTF_8);
+        } finally {
+            Arrays.fill(buf, (byte) 0);
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package com.ryan.vault.secrets;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorator that times every call of a provider and counts failures.
+ * {@link SecretsClientFactory} puts it around the provider when metrics are enabled.
+ * A missing secret (SecretNotFoundException) counts as an error too.
+ */
+public final class InstrumentedSecretsClient implements AsyncSecretsClient {
+
+    private final AsyncSecretsClient delegate;
+    private final SecretsInstrumentation instrumentation;
+    private final SecretsInstrumentation.Timer getRequired;
+    private final SecretsInstrumentation.Timer getAll;
+    private final SecretsInstrumentation.Timer getMany;
+    private final SecretsInstrumentation.Counter errors;
+
+    public InstrumentedSecretsClient(AsyncSecretsClient delegate, SecretsInstrumentation instrumentation,
+                                     String provider, String mount) {
+        this.delegate = delegate;
+        this.instrumentation = instrumentation;
+        this.getRequired = instrumentation.timer(SecretsInstrumentation.GET_REQUIRED, provider, mount);
+        this.getAll = instrumentation.timer(SecretsInstrumentation.GET_ALL, provider, mount);
+        this.getMany = instrumentation.timer(SecretsInstrumentation.GET_MANY, provider, mount);
+        this.errors = instrumentation.counter(SecretsInstrumentation.ERRORS, provider, mount);
+    }
+
+    /** The wrapped provider. */
+    public AsyncSecretsClient delegate() {
+        return delegate;
+    }
+
+    public MetricsSnapshot metrics() {
+        return instrumentation.snapshot();
+    }
+
+    @Override
+    public EnumSet<SecretCapability> capabilities() {
+        return delegate.capabilities();
+    }
+
+    @Override
+    public String getRequired(String path, String key) throws SecretException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRequired(path, key);
+        } catch (SecretException | RuntimeException e) {
+            errors.increment();
+            throw e;
+        } finally {
+            getRequired.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public char[] getRequiredChars(String path, String key) throws SecretException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRequiredChars(path, key);
+        } catch (SecretException | RuntimeException e) {
+            errors.increment();
+            throw e;
+        } finally {
+            getRequired.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<String, String> getAll(String path) throws SecretException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAll(path);
+        } catch (SecretException | RuntimeException e) {
+            errors.increment();
+            throw e;
+        } finally {
+            getAll.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<SecretRef, SecretResult> getMany(Collection<SecretRef> refs) {
+        long start = System.nanoTime();
+        try {
+            Map<SecretRef, SecretResult> results = delegate.getMany(refs);
+            for (SecretResult r : results.values()) {
+                if (!r.isSuccess()) errors.increment();
+            }
+            return results;
+        } finally {
+            getMany.record(System.nanoTime() - start);
+        }
+    }
+
+    /** Timed until the future completes; a cache hit completes (and is recorded) before this returns. */
+    @Override
+    public CompletableFuture<String> getRequiredAsync(String path, String key) {
+        long start = System.nanoTime();
+        return timed(delegate.getRequiredAsync(path, key), getRequired, start);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getAllAsync(String path) {
+        long start = System.nanoTime();
+        return timed(delegate.getAllAsync(path), getAll, start);
+    }
+
+    private <T> CompletableFuture<T> timed(CompletableFuture<T> future, SecretsInstrumentation.Timer timer, long start) {
+        future.whenComplete((value, error) -> {
+            if (error != null) errors.increment();
+            timer.record(System.nanoTime() - start);
+        });
+        return future;
+    }
+
+    @Override
+    public SecretWatch watch(String path, String key, SecretChangeListener listener) throws SecretException {
+        return delegate.watch(path, key, listener);
+    }
+
+    @Override
+    public void invalidate(String path) {
+        delegate.invalidate(path);
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
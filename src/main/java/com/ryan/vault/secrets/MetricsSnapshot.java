@@ -0,0 +1,192 @@
+package com.ryan.vault.secrets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Point-in-time copy of the counters and timers of a {@link SecretsInstrumentation}.
+ * Export with {@link #toPrometheusText()} (Prometheus text format) or {@link #toString()}.
+ */
+public final class MetricsSnapshot {
+
+    public static final MetricsSnapshot EMPTY = new MetricsSnapshot(
+            Collections.<CounterValue>emptyList(), Collections.<TimerValue>emptyList());
+
+    /** One counter with its tags. */
+    public static final class CounterValue {
+        private final String name;
+        private final String provider;
+        private final String mount;
+        private final long value;
+
+        CounterValue(String name, String provider, String mount, long value) {
+            this.name = name;
+            this.provider = provider;
+            this.mount = mount;
+            this.value = value;
+        }
+
+        public String name() { return name; }
+        public String provider() { return provider; }
+        public String mount() { return mount; }
+        public long value() { return value; }
+    }
+
+    /** One latency histogram with its tags. Percentiles are accurate to about 6%. */
+    public static final class TimerValue {
+        private final String name;
+        private final String provider;
+        private final String mount;
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        TimerValue(String name, String provider, String mount, long[] counts, long sumNanos, long maxNanos) {
+            this.name = name;
+            this.provider = provider;
+            this.mount = mount;
+            this.counts = counts;
+            long total = 0L;
+            for (long c : counts) total += c;
+            this.count = total;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String name() { return name; }
+        public String provider() { return provider; }
+        public String mount() { return mount; }
+        public long count() { return count; }
+        public long sumNanos() { return sumNanos; }
+        public long maxNanos() { return maxNanos; }
+
+        public long meanNanos() {
+            return count == 0L ? 0L : sumNanos / count;
+        }
+
+        /** Latency at a quantile in [0, 1], e.g. 0.99 for p99. 0 when nothing was recorded. */
+        public long percentileNanos(double quantile) {
+            if (count == 0L) return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(LatencyHistogram.valueOf(i), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+
+    private final List<CounterValue> counters;
+    private final List<TimerValue> timers;
+
+    MetricsSnapshot(List<CounterValue> counters, List<TimerValue> timers) {
+        List<CounterValue> c = new ArrayList<CounterValue>(counters);
+        List<TimerValue> t = new ArrayList<TimerValue>(timers);
+        Collections.sort(c, Comparator.comparing((CounterValue v) -> v.name).thenComparing(v -> v.provider).thenComparing(v -> v.mount));
+        Collections.sort(t, Comparator.comparing((TimerValue v) -> v.name).thenComparing(v -> v.provider).thenComparing(v -> v.mount));
+        this.counters = Collections.unmodifiableList(c);
+        this.timers = Collections.unmodifiableList(t);
+    }
+
+    public List<CounterValue> counters() { return counters; }
+
+    public List<TimerValue> timers() { return timers; }
+
+    /** Sum of a counter over all its tags; 0 when it was never created. */
+    public long counter(String name) {
+        long sum = 0L;
+        for (CounterValue c : counters) if (c.name.equals(name)) sum += c.value;
+        return sum;
+    }
+
+    /** A timer merged over all its tags, or null when it was never created. */
+    public TimerValue timer(String name) {
+        long[] counts = null;
+        long sum = 0L;
+        long max = 0L;
+        for (TimerValue t : timers) {
+            if (!t.name.equals(name)) continue;
+            if (counts == null) counts = new long[t.counts.length];
+            for (int i = 0; i < counts.length; i++) counts[i] += t.counts[i];
+            sum += t.sumNanos;
+            max = Math.max(max, t.maxNanos);
+        }
+        return counts == null ? null : new TimerValue(name, "", "", counts, sum, max);
+    }
+
+    /**
+     * Prometheus text exposition format: counters as *_total, timers as summaries in seconds.
+     * Dots in names become underscores; provider and mount become labels.
+     */
+    public String toPrometheusText() {
+        StringBuilder sb = new StringBuilder();
+        String lastName = null;
+        for (CounterValue c : counters) {
+            String metric = promName(c.name) + "_total";
+            if (!metric.equals(lastName)) sb.append("# TYPE ").append(metric).append(" counter\n");
+            lastName = metric;
+            sb.append(metric).append(labels(c.provider, c.mount, null)).append(' ').append(c.value).append('\n');
+        }
+        for (TimerValue t : timers) {
+            String metric = promName(t.name) + "_seconds";
+            if (!metric.equals(lastName)) sb.append("# TYPE ").append(metric).append(" summary\n");
+            lastName = metric;
+            for (double q : new double[] {0.5d, 0.9d, 0.99d, 0.999d}) {
+                sb.append(metric).append(labels(t.provider, t.mount, String.valueOf(q))).append(' ')
+                        .append(seconds(t.percentileNanos(q))).append('\n');
+            }
+            sb.append(metric).append("_sum").append(labels(t.provider, t.mount, null)).append(' ').append(seconds(t.sumNanos)).append('\n');
+            sb.append(metric).append("_count").append(labels(t.provider, t.mount, null)).append(' ').append(t.count).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Secrets metrics:\n");
+        for (CounterValue c : counters) {
+            sb.append(String.format(Locale.ROOT, "  %-24s %-18s %12d%n", c.name, tags(c.provider, c.mount), c.value));
+        }
+        for (TimerValue t : timers) {
+            sb.append(String.format(Locale.ROOT, "  %-24s %-18s count=%d mean=%s p50=%s p99=%s p99.9=%s max=%s%n",
+                    t.name, tags(t.provider, t.mount), t.count, micros(t.meanNanos()), micros(t.percentileNanos(0.5d)),
+                    micros(t.percentileNanos(0.99d)), micros(t.percentileNanos(0.999d)), micros(t.maxNanos)));
+        }
+        return sb.toString();
+    }
+
+    private static String promName(String name) {
+        return name.replace('.', '_');
+    }
+
+    private static String labels(String provider, String mount, String quantile) {
+        List<String> parts = new ArrayList<String>();
+        if (!provider.isEmpty()) parts.add("provider=\"" + provider + "\"");
+        if (!mount.isEmpty()) parts.add("mount=\"" + mount + "\"");
+        if (quantile != null) parts.add("quantile=\"" + quantile + "\"");
+        if (parts.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(parts.get(i));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String tags(String provider, String mount) {
+        return mount.isEmpty() ? provider : provider + "/" + mount;
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9d);
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1fus", nanos / 1e3d);
+    }
+}
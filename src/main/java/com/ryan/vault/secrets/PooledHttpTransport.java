@@ -0,0 +1,486 @@
+package com.ryan.vault.secrets;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP/1.1 transport with persistent (keep-alive) connections.
+ *
+ * Why: HttpURLConnection + disconnect() can close the socket after every call, so with TLS
+ * each cache miss paid a TCP + TLS handshake. Here a connection goes back to a per-origin
+ * pool once its response has been read, and the next request reuses it.
+ *
+ *  - Pool size is bounded per origin (scheme://host:port) by vault.http.maxConnections.
+ *    When every connection is busy, a request waits up to vault.http.poolAcquireTimeoutMs.
+ *  - Connect, read and pool-acquire timeouts are separate.
+ *  - All TLS sockets come from one SSLSocketFactory, so new connections resume the cached
+ *    TLS session (abbreviated handshake) instead of doing a full one. The default factory
+ *    honors -Djavax.net.ssl.trustStore as described in the README. Host names are verified.
+ *  - Idle connections older than vault.http.idleTimeoutMs are closed instead of reused.
+ *    If a reused connection turns out to be closed by the server, an idempotent request (GET,
+ *    HEAD, PUT, DELETE, OPTIONS) is sent once more on a fresh connection. Others, such as the
+ *    AppRole login POST, fail instead: the server may have processed them.
+ *
+ * Opt-in (vault.http.transport=pooled): it connects directly, ignoring the JVM proxy settings
+ * (http(s).proxyHost, http.nonProxyHosts), and does not follow redirects.
+ */
+public final class PooledHttpTransport implements HttpTransport {
+
+    private static final int MAX_LINE = 8192;
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int acquireTimeoutMs;
+    private final int maxConnectionsPerOrigin;
+    private final long idleTimeoutMs;
+    private final SSLSocketFactory sslSocketFactory;
+    private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<String, Pool>();
+    private volatile boolean closed;
+
+    public PooledHttpTransport(int connectTimeoutMs, int readTimeoutMs, int acquireTimeoutMs,
+                               int maxConnectionsPerOrigin, long idleTimeoutMs) {
+        this(connectTimeoutMs, readTimeoutMs, acquireTimeoutMs, maxConnectionsPerOrigin, idleTimeoutMs,
+                (SSLSocketFactory) SSLSocketFactory.getDefault());
+    }
+
+    public PooledHttpTransport(int connectTimeoutMs, int readTimeoutMs, int acquireTimeoutMs,
+                               int maxConnectionsPerOrigin, long idleTimeoutMs, SSLSocketFactory sslSocketFactory) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.maxConnectionsPerOrigin = Math.max(1, maxConnectionsPerOrigin);
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    @Override
+    public HttpResponse send(HttpRequest request) throws IOException {
+        if (closed) throw new IOException("Transport is closed");
+        URL url = new URL(request.url());
+        boolean https = "https".equalsIgnoreCase(url.getProtocol());
+        if (!https && !"http".equalsIgnoreCase(url.getProtocol())) {
+            throw new IOException("Unsupported protocol: " + url.getProtocol());
+        }
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String host = url.getHost();
+        String originKey = url.getProtocol().toLowerCase() + "://" + host + ":" + port;
+
+        Pool pool = pools.get(originKey);
+        if (pool == null) {
+            Pool created = new Pool(https, host, port);
+            pool = pools.putIfAbsent(originKey, created);
+            if (pool == null) pool = created;
+        }
+
+        pool.acquire(acquireTimeoutMs);
+        boolean handedOff = false;
+        try {
+            while (true) {
+                Connection c = pool.pollIdle(System.currentTimeMillis());
+                boolean reused = c != null;
+                if (c == null) c = open(pool, request.connectTimeoutMs() > 0 ? request.connectTimeoutMs() : connectTimeoutMs);
+                try {
+                    c.socket.setSoTimeout(request.readTimeoutMs() > 0 ? request.readTimeoutMs() : readTimeoutMs);
+                    writeRequest(c, request, url, pool);
+                    HttpResponse response = readResponse(c, request, pool);
+                    handedOff = true;
+                    return response;
+                } catch (IOException e) {
+                    c.closeQuietly();
+                    // The server may close an idle keep-alive connection at any time; that shows
+                    // up as EOF before the status line. Try again on another connection.
+                    if (reused && !c.responseStarted && isIdempotent(request.method())) continue;
+                    throw e;
+                }
+            }
+        } finally {
+            if (!handedOff) pool.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Pool pool : pools.values()) pool.closeIdle();
+        pools.clear();
+    }
+
+    private Connection open(Pool pool, int timeoutMs) throws IOException {
+        String connectHost = pool.host.startsWith("[") ? pool.host.substring(1, pool.host.length() - 1) : pool.host;
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(connectHost, pool.port), timeoutMs);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            if (pool.https) {
+                socket.setSoTimeout(timeoutMs); // bound the handshake as part of connecting
+                SSLSocket ssl = (SSLSocket) sslSocketFactory.createSocket(socket, connectHost, pool.port, true);
+                SSLParameters params = ssl.getSSLParameters();
+                params.setEndpointIdentificationAlgorithm("HTTPS");
+                ssl.setSSLParameters(params);
+                ssl.startHandshake();
+                socket = ssl;
+            }
+            return new Connection(socket);
+        } catch (IOException e) {
+            try { socket.close(); } catch (IOException ignored) {}
+            throw e;
+        }
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || "OPTIONS".equals(method);
+    }
+
+    private static void writeRequest(Connection c, HttpRequest request, URL url, Pool pool) throws IOException {
+        String target = url.getFile();
+        if (target == null || target.isEmpty()) target = "/";
+        boolean defaultPort = pool.port == (pool.https ? 443 : 80);
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.method()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(pool.host);
+        if (!defaultPort) head.append(':').append(pool.port);
+        head.append("\r\n");
+        for (Map.Entry<String, String> h : request.headers().entrySet()) {
+            head.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
+        }
+        byte[] body = request.body();
+        if (body != null || "POST".equals(request.method()) || "PUT".equals(request.method())) {
+            head.append("Content-Length: ").append(body == null ? 0 : body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        c.out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) c.out.write(body);
+        c.out.flush();
+    }
+
+    private HttpResponse readResponse(Connection c, HttpRequest request, Pool pool) throws IOException {
+        String statusLine = readLine(c);
+        if (statusLine == null) throw new IOException("Connection closed before response");
+        c.responseStarted = true;
+
+        // HTTP/1.1 200 OK
+        int sp1 = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || sp1 < 0 || statusLine.length() < sp1 + 4) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        final int status;
+        try {
+            status = Integer.parseInt(statusLine.substring(sp1 + 1, sp1 + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+
+        final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while ((line = readLine(c)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+        if (line == null) throw new IOException("Connection closed while reading headers");
+
+        String connection = headers.get("Connection");
+        boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connection)
+                : "keep-alive".equalsIgnoreCase(connection);
+
+        InputStream body;
+        String transferEncoding = headers.get("Transfer-Encoding");
+        String contentLength = headers.get("Content-Length");
+        if ("HEAD".equals(request.method()) || status == 204 || status == 304 || (status >= 100 && status < 200)) {
+            body = new FixedLengthInputStream(c.in, 0L);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = new ChunkedInputStream(c);
+        } else if (contentLength != null) {
+            try {
+                long length = Long.parseLong(contentLength);
+                if (length < 0) throw new NumberFormatException();
+                body = new FixedLengthInputStream(c.in, length);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed Content-Length: " + contentLength);
+            }
+        } else {
+            body = c.in; // delimited by connection close
+            keepAlive = false;
+        }
+
+        return new PooledResponse(status, headers, body, c, pool, keepAlive);
+    }
+
+    /** Reads one CRLF (or LF) terminated header line; null on EOF before any byte. */
+    private static String readLine(Connection c) throws IOException {
+        ByteArrayOutputStream line = c.lineBuffer;
+        line.reset();
+        int b;
+        boolean any = false;
+        while ((b = c.in.read()) != -1) {
+            any = true;
+            if (b == '\n') break;
+            if (line.size() >= MAX_LINE) throw new IOException("HTTP header line too long");
+            line.write(b);
+        }
+        if (!any) return null;
+        byte[] bytes = line.toByteArray();
+        int len = bytes.length;
+        if (len > 0 && bytes[len - 1] == '\r') len--;
+        return new String(bytes, 0, len, StandardCharsets.ISO_8859_1);
+    }
+
+    /** Connections for one scheme://host:port. */
+    private final class Pool {
+        final boolean https;
+        final String host;
+        final int port;
+        final Semaphore permits = new Semaphore(maxConnectionsPerOrigin);
+        final ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+
+        Pool(boolean https, String host, int port) {
+            this.https = https;
+            this.host = host;
+            this.port = port;
+        }
+
+        void acquire(int timeoutMs) throws IOException {
+            try {
+                if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timed out after " + timeoutMs + " ms waiting for a connection to "
+                            + host + ":" + port + " (vault.http.maxConnections=" + maxConnectionsPerOrigin + ")");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a connection", e);
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        /** Most recently used first, so the oldest connections age out. */
+        synchronized Connection pollIdle(long now) {
+            Connection c;
+            while ((c = idle.pollLast()) != null) {
+                if (now - c.lastUsed < idleTimeoutMs && !c.socket.isClosed()) return c;
+                c.closeQuietly();
+            }
+            return null;
+        }
+
+        synchronized void offer(Connection c) {
+            if (closed) {
+                c.closeQuietly();
+                return;
+            }
+            c.lastUsed = System.currentTimeMillis();
+            c.responseStarted = false;
+            idle.addLast(c);
+        }
+
+        synchronized void closeIdle() {
+            Connection c;
+            while ((c = idle.pollFirst()) != null) c.closeQuietly();
+        }
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(128);
+        long lastUsed;
+        boolean responseStarted;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        void closeQuietly() {
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Closing the response returns the connection to the pool when the body was read to the
+     * end (a small unread remainder is drained first); otherwise the socket is closed.
+     */
+    private static final class PooledResponse implements HttpResponse {
+        private final int status;
+        private final Map<String, String> headers;
+        private final InputStream body;
+        private final Connection connection;
+        private final Pool pool;
+        private final boolean keepAlive;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        PooledResponse(int status, Map<String, String> headers, InputStream body,
+                       Connection connection, Pool pool, boolean keepAlive) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.connection = connection;
+            this.pool = pool;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override public int status() { return status; }
+        @Override public String header(String name) { return headers.get(name); }
+        @Override public InputStream body() { return body; }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            try {
+                boolean reusable = keepAlive && drain();
+                if (reusable) {
+                    pool.offer(connection);
+                } else {
+                    connection.closeQuietly();
+                }
+            } finally {
+                pool.release();
+            }
+        }
+
+        private boolean drain() {
+            try {
+                byte[] buf = new byte[1024];
+                int drained = 0;
+                int n;
+                while ((n = body.read(buf)) != -1) {
+                    drained += n;
+                    if (drained > MAX_DRAIN) return false;
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /** Body with a Content-Length: never reads past it, so the connection stays usable. */
+    private static final class FixedLengthInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b == -1) throw new IOException("Connection closed before end of body");
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(buf, off, (int) Math.min(len, remaining));
+            if (n == -1) throw new IOException("Connection closed before end of body");
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+            // the connection is owned by the response
+        }
+    }
+
+    /** Transfer-Encoding: chunked body. */
+    private static final class ChunkedInputStream extends InputStream {
+        private final Connection c;
+        private long chunkRemaining;
+        private boolean started;
+        private boolean eof;
+
+        ChunkedInputStream(Connection c) {
+            this.c = c;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) return -1;
+            int b = c.in.read();
+            if (b == -1) throw new IOException("Connection closed inside a chunk");
+            chunkRemaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (!nextChunk()) return -1;
+            int n = c.in.read(buf, off, (int) Math.min(len, chunkRemaining));
+            if (n == -1) throw new IOException("Connection closed inside a chunk");
+            chunkRemaining -= n;
+            return n;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (eof) return false;
+            if (chunkRemaining > 0) return true;
+            if (started) {
+                String crlf = readLine(c); // CRLF after the previous chunk's data
+                if (crlf == null || !crlf.isEmpty()) throw new IOException("Malformed chunk terminator");
+            }
+            started = true;
+            String sizeLine = readLine(c);
+            if (sizeLine == null) throw new IOException("Connection closed before chunk size");
+            int semi = sizeLine.indexOf(';');
+            String hex = (semi >= 0 ? sizeLine.substring(0, semi) : sizeLine).trim();
+            try {
+                chunkRemaining = Long.parseLong(hex, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + sizeLine);
+            }
+            if (chunkRemaining < 0) throw new IOException("Malformed chunk size: " + sizeLine);
+            if (chunkRemaining == 0) {
+                String trailer;
+                while ((trailer = readLine(c)) != null && !trailer.isEmpty()) {
+                    // trailers are ignored
+                }
+                eof = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // the connection is owned by the response
+        }
+    }
+}
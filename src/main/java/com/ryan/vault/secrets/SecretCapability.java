@@ -3,7 +3,9 @@ package com.ryan.vault.secrets;
 /**
  * Capability-driven design: what a secrets provider can do.
  * For your requirement, we only need KV_READ.
+ * WATCH: the provider notices changes and calls the listeners passed to SecretsClient.watch(...).
  */
 public enum SecretCapability {
-    KV_READ
+    KV_READ,
+    WATCH
 }
@@ -0,0 +1,11 @@
+package com.ryan.vault.secrets;
+
+/**
+ * Callback for {@link SecretsClient#watch(String, String, SecretChangeListener)}.
+ * Runs on the provider's background thread: keep it short and hand heavy work off.
+ */
+public interface SecretChangeListener {
+
+    /** The value of path/key changed. newValue is null when the key or the whole path was removed. */
+    void onChange(String path, String key, String newValue);
+}
@@ -1,6 +1,34 @@
 package com.ryan.vault.secrets;
 
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
 public class SecretException extends Exception {
-    public SecretException(String message) { super(message); }
-    public SecretException(String message, Throwable cause) { super(message, cause); }
+
+    /** Returned by {@link #getStatusCode()} when the failure did not come with an HTTP status. */
+    public static final int NO_STATUS = -1;
+
+    private final int statusCode;
+
+    public SecretException(String message) { this(message, NO_STATUS); }
+    public SecretException(String message, Throwable cause) { this(message, NO_STATUS, cause); }
+    public SecretException(String message, int statusCode) { super(message); this.statusCode = statusCode; }
+    public SecretException(String message, int statusCode, Throwable cause) { super(message, cause); this.statusCode = statusCode; }
+
+    /** HTTP status returned by the backend (e.g. 403 from Vault), or {@link #NO_STATUS}. */
+    public int getStatusCode() { return statusCode; }
+
+    /**
+     * True when the backend was unreachable or overloaded: 5xx (the Vault client's circuit breaker
+     * and concurrency limit answer 503 too), 429, or no status with an I/O error or timeout as the
+     * cause. A 400, 401 or 403 means the request or the caller's access is wrong, not an outage.
+     */
+    public boolean isOutage() {
+        if (statusCode != NO_STATUS) return statusCode >= 500 || statusCode == 429;
+        for (Throwable cause = getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SecretException) return ((SecretException) cause).isOutage();
+            if (cause instanceof IOException || cause instanceof TimeoutException) return true;
+        }
+        return false;
+    }
 }
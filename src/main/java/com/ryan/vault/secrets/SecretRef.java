@@ -0,0 +1,42 @@
+package com.ryan.vault.secrets;
+
+/**
+ * A (path, key) pair identifying one secret value, used by batch reads.
+ * Example: SecretRef.of("integration/systemA", "password").
+ */
+public final class SecretRef {
+
+    private final String path;
+    private final String key;
+
+    private SecretRef(String path, String key) {
+        if (path == null || key == null) throw new IllegalArgumentException("path and key are required");
+        this.path = path;
+        this.key = key;
+    }
+
+    public static SecretRef of(String path, String key) {
+        return new SecretRef(path, key);
+    }
+
+    public String path() { return path; }
+    public String key() { return key; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SecretRef)) return false;
+        SecretRef other = (SecretRef) o;
+        return path.equals(other.path) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * path.hashCode() + key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path + "." + key;
+    }
+}
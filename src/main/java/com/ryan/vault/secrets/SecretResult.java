@@ -0,0 +1,43 @@
+package com.ryan.vault.secrets;
+
+/**
+ * Outcome of one entry of a batch read: either the value or the error for that entry.
+ * One failing entry does not fail the whole batch.
+ */
+public final class SecretResult {
+
+    private final String value;
+    private final SecretException error;
+
+    private SecretResult(String value, SecretException error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    public static SecretResult success(String value) {
+        return new SecretResult(value, null);
+    }
+
+    public static SecretResult failure(SecretException error) {
+        return new SecretResult(null, error);
+    }
+
+    public boolean isSuccess() { return error == null; }
+
+    /** The value, or null when this entry failed. */
+    public String value() { return value; }
+
+    /** The error, or null when this entry succeeded. */
+    public SecretException error() { return error; }
+
+    public String getOrThrow() throws SecretException {
+        if (error != null) throw error;
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        // never print secret values
+        return isSuccess() ? "SecretResult[ok]" : "SecretResult[" + error + "]";
+    }
+}
@@ -0,0 +1,11 @@
+package com.ryan.vault.secrets;
+
+/** Handle of a registered watch; close() stops it. Closing twice is harmless. */
+public interface SecretWatch extends AutoCloseable {
+
+    /** For providers that cannot detect changes: never fires. */
+    SecretWatch NONE = () -> { };
+
+    @Override
+    void close();
+}
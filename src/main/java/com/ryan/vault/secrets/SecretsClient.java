@@ -1,6 +1,9 @@
 package com.ryan.vault.secrets;
 
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Minimal secrets interface for static secrets.
@@ -16,6 +19,64 @@ public interface SecretsClient extends AutoCloseable {
      */
     String getRequired(String path, String key) throws SecretException;
 
+    /**
+     * Same as {@link #getRequired(String, String)}, as a char[] the caller owns and should wipe
+     * (Arrays.fill(value, '\0')) once used. With secrets.cache.impl=offheap, Vault cache hits are
+     * copied straight from off-heap memory and no String of the value is created.
+     */
+    default char[] getRequiredChars(String path, String key) throws SecretException {
+        return getRequired(path, key).toCharArray();
+    }
+
+    /**
+     * Read every key stored under a logical path in one call.
+     * Example: path="integration/systemA" -> {username=..., password=...}.
+     * The returned map is read-only.
+     */
+    Map<String, String> getAll(String path) throws SecretException;
+
+    /**
+     * Batch read: returns one result per distinct ref, in request order.
+     * Errors are reported per entry (see {@link SecretResult}) instead of failing the batch.
+     *
+     * The default reads the refs one by one, which is right for in-memory providers.
+     * Remote providers override it to fetch distinct paths in parallel.
+     */
+    default Map<SecretRef, SecretResult> getMany(Collection<SecretRef> refs) {
+        Map<SecretRef, SecretResult> results = new LinkedHashMap<SecretRef, SecretResult>();
+        for (SecretRef ref : refs) {
+            if (results.containsKey(ref)) continue;
+            try {
+                results.put(ref, SecretResult.success(getRequired(ref.path(), ref.key())));
+            } catch (SecretException e) {
+                results.put(ref, SecretResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Calls the listener whenever the value of path/key changes (not for the current value).
+     * Only providers advertising {@link SecretCapability#WATCH} detect changes; for the others
+     * this returns {@link SecretWatch#NONE} and the listener never fires.
+     */
+    default SecretWatch watch(String path, String key, SecretChangeListener listener) throws SecretException {
+        return SecretWatch.NONE;
+    }
+
+    /**
+     * Drops whatever the provider cached for a path (values and "not found" results),
+     * so the next read goes to the source. No-op for providers without a cache.
+     */
+    default void invalidate(String path) {
+        // nothing cached
+    }
+
+    /** Drops every cached value and "not found" result. No-op for providers without a cache. */
+    default void invalidateAll() {
+        // nothing cached
+    }
+
     @Override
     void close();
 }
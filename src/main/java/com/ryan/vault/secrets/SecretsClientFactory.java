@@ -1,10 +1,19 @@
 package com.ryan.vault.secrets;
 
+import com.ryan.vault.secrets.providers.ChainSecretsClient;
 import com.ryan.vault.secrets.providers.EnvSecretsClient;
+import com.ryan.vault.secrets.providers.LocalAgentSecretsClient;
+import com.ryan.vault.secrets.providers.PreloadReport;
 import com.ryan.vault.secrets.providers.PropertiesFileSecretsClient;
 import com.ryan.vault.secrets.providers.VaultAppRoleKvV2Client;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Factory Pattern: decide which SecretsClient implementation to create based on configuration.
@@ -14,26 +23,127 @@ public final class SecretsClientFactory {
     private SecretsClientFactory() {}
 
     /**
-     * Property: secrets.provider = vault | env
+     * Property: secrets.provider = vault | env | file | local-agent | chain:a,b,...
      * - vault/openbao: uses AppRole + KV v2
      * - env: reads from environment variables
+     * - file/properties: reads from secrets.file.path
+     * - local-agent: reads through the host's secrets agent, see {@link LocalAgentSecretsClient}
+     * - chain:vault,file,env: asks the providers in order, see {@link ChainSecretsClient}
+     * Property: secrets.metrics = true wraps the provider in an {@link InstrumentedSecretsClient}
      */
     public static SecretsClient create(Properties p) throws SecretException {
+        return create(p, SecretsInstrumentation.create(p));
+    }
+
+    /**
+     * Same as {@link #create(Properties)}, recording into the given instrumentation
+     * (e.g. one {@link SecretsMetrics} shared by several clients).
+     * With {@link SecretsInstrumentation#NOOP} the provider is returned unwrapped.
+     */
+    public static SecretsClient create(Properties p, SecretsInstrumentation instrumentation) throws SecretException {
         String provider = Config.get(p, "secrets.provider", "vault").toLowerCase();
 
+        if (provider.startsWith("chain:")) {
+            return instrument(createChain(provider.substring("chain:".length()), p, instrumentation),
+                    instrumentation, "chain", "");
+        }
+
+        AsyncSecretsClient client = createProvider(provider, p, instrumentation);
+        String mount = client instanceof VaultAppRoleKvV2Client ? Config.get(p, "vault.mount", "secret") : "";
+        return instrument(client, instrumentation, provider, mount);
+    }
+
+    /** One provider, not wrapped. */
+    private static AsyncSecretsClient createProvider(String provider, Properties p, SecretsInstrumentation instrumentation)
+            throws SecretException {
         if ("vault".equals(provider) || "openbao".equals(provider)) {
-            return new VaultAppRoleKvV2Client(p);
+            VaultAppRoleKvV2Client client = new VaultAppRoleKvV2Client(p, instrumentation);
+            preload(client, p);
+            return client;
         }
 
         if ("env".equals(provider)) {
-            return new EnvSecretsClient();
+            return new EnvSecretsClient(p);
         }
 
-
         if ("properties".equals(provider) || "file".equals(provider)) {
             return new PropertiesFileSecretsClient(p);
         }
 
+        if ("local-agent".equals(provider)) {
+            return new LocalAgentSecretsClient(p);
+        }
+
         throw new SecretException("Unknown secrets.provider: " + provider);
     }
+
+    /**
+     * Members of "chain:vault,file,env", created in order with the same properties
+     * (secrets.provider set to the member name, so metrics are tagged with it).
+     */
+    private static ChainSecretsClient createChain(String list, Properties p, SecretsInstrumentation instrumentation)
+            throws SecretException {
+        List<String> names = new ArrayList<String>();
+        for (String name : list.split(",")) {
+            if (!name.trim().isEmpty()) names.add(name.trim());
+        }
+        if (names.isEmpty()) throw new SecretException("secrets.provider chain has no providers: chain:" + list);
+
+        List<AsyncSecretsClient> members = new ArrayList<AsyncSecretsClient>();
+        try {
+            for (String name : names) {
+                if (name.startsWith("chain:")) throw new SecretException("Chains cannot be nested: " + name);
+                Properties memberProps = new Properties();
+                memberProps.putAll(p);
+                memberProps.setProperty("secrets.provider", name);
+                members.add(createProvider(name, memberProps, instrumentation));
+            }
+            return new ChainSecretsClient(names, members, p, instrumentation);
+        } catch (SecretException | RuntimeException e) {
+            for (AsyncSecretsClient member : members) member.close();
+            throw e;
+        }
+    }
+
+    private static AsyncSecretsClient instrument(AsyncSecretsClient client, SecretsInstrumentation instrumentation,
+                                                 String provider, String mount) {
+        if (instrumentation == SecretsInstrumentation.NOOP) return client;
+        return new InstrumentedSecretsClient(client, instrumentation, provider, mount);
+    }
+
+    /**
+     * Property: secrets.preload = comma-separated paths and path prefixes (ending with '/')
+     * Logs in and reads all of them in parallel right away, so the first requests hit a warm cache.
+     * - secrets.preload.wait: block until the warm-up is done (default true)
+     * - secrets.preload.timeoutMs: max time to block (default 10000); the warm-up keeps going in the background
+     * Per-path timings: VaultAppRoleKvV2Client.lastPreload()
+     */
+    private static void preload(VaultAppRoleKvV2Client client, Properties p) {
+        List<String> entries = Config.getList(p, "secrets.preload");
+        if (entries.isEmpty()) return;
+
+        CompletableFuture<PreloadReport> warmUp = client.preload(entries);
+        if (!Config.getBoolean(p, "secrets.preload.wait", true)) return;
+        try {
+            warmUp.get(Config.getLong(p, "secrets.preload.timeoutMs", 10000L), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Never fail startup on a warm-up problem: reads will simply go to Vault.
+        }
+    }
+
+    /**
+     * Same as {@link #create(Properties)}, typed for non-blocking callers.
+     * Cache hits complete on the caller's thread; Vault reads run on the provider's own
+     * bounded pool (vault.async.threads, vault.async.queueSize).
+     */
+    public static AsyncSecretsClient createAsync(Properties p) throws SecretException {
+        SecretsClient client = create(p);
+        if (client instanceof AsyncSecretsClient) {
+            return (AsyncSecretsClient) client;
+        }
+        client.close();
+        throw new SecretException("secrets.provider does not support async reads: " + Config.get(p, "secrets.provider", "vault"));
+    }
 }
@@ -0,0 +1,78 @@
+package com.ryan.vault.secrets;
+
+import java.util.Properties;
+
+/**
+ * Instrumentation SPI: counters and latency timers recorded by the providers and by
+ * {@link InstrumentedSecretsClient}.
+ *
+ * Providers resolve their counters and timers once (at construction), tagged with the
+ * provider name and the mount, and only call increment()/record() on the hot path.
+ * {@link #NOOP} hands out shared do-nothing instances, so an uninstrumented client pays one
+ * empty call per event; {@link SecretsClientFactory} does not even wrap the client then.
+ *
+ * Property: secrets.metrics = true | false (default false) → {@link SecretsMetrics} or {@link #NOOP}
+ */
+public interface SecretsInstrumentation {
+
+    // Recorded by InstrumentedSecretsClient (every provider)
+    String GET_REQUIRED = "secrets.get_required";
+    String GET_ALL = "secrets.get_all";
+    String GET_MANY = "secrets.get_many";
+    String ERRORS = "secrets.errors";
+
+    // Recorded by the providers that have a cache / talk to Vault
+    String CACHE_HIT = "secrets.cache.hit";
+    String CACHE_MISS = "secrets.cache.miss";
+    String CACHE_STALE = "secrets.cache.stale";        // served past expiry (stale-while-revalidate, stale-if-error, snapshot)
+    String CACHE_EVICTION = "secrets.cache.eviction";  // dropped because the cache was full
+    String CACHE_NEGATIVE_HIT = "secrets.cache.negative_hit"; // "not found" answered from the negative cache
+    String LOGIN = "vault.login";
+    String TOKEN_RENEW = "vault.token.renew";
+    String KV_READ = "vault.kv.read";
+    String KV_RETRY_403 = "vault.kv.retry_403";
+    String KV_METADATA_READ = "vault.kv.metadata_read";
+    String KV_REVALIDATED = "vault.kv.revalidated";    // full read avoided: metadata showed the same version
+    String ENDPOINT_FAILOVER = "vault.endpoint.failover"; // request sent to another vault.addr node after a failure
+    String KV_REJECTED = "vault.kv.rejected";          // read failed fast: circuit breaker open or concurrency limit reached
+    String KV_RETRY_DENIED = "vault.kv.retry_denied";  // 403 retry skipped: retry budget used up
+
+    // Recorded by ChainSecretsClient, tagged with the member provider
+    String CHAIN_LOOKUP = "secrets.chain.lookup";      // latency of each member call
+    String CHAIN_HIT = "secrets.chain.hit";            // member answered
+    String CHAIN_MISS = "secrets.chain.miss";          // member did not have it (SecretNotFoundException)
+    String CHAIN_ERROR = "secrets.chain.error";        // member failed (outage, or 403 etc. that ends the lookup)
+    String CHAIN_HEDGE = "secrets.chain.hedge";        // member called because the previous one was too slow
+
+    /** Monotonic counter. */
+    interface Counter {
+        void increment();
+    }
+
+    /** Latency recorder. */
+    interface Timer {
+        void record(long nanos);
+    }
+
+    /** Returns the counter for a name and tags; the same instance for the same arguments. */
+    Counter counter(String name, String provider, String mount);
+
+    /** Returns the timer for a name and tags; the same instance for the same arguments. */
+    Timer timer(String name, String provider, String mount);
+
+    /** Point-in-time copy of every counter and timer. */
+    MetricsSnapshot snapshot();
+
+    Counter NOOP_COUNTER = () -> { };
+    Timer NOOP_TIMER = nanos -> { };
+
+    SecretsInstrumentation NOOP = new SecretsInstrumentation() {
+        @Override public Counter counter(String name, String provider, String mount) { return NOOP_COUNTER; }
+        @Override public Timer timer(String name, String provider, String mount) { return NOOP_TIMER; }
+        @Override public MetricsSnapshot snapshot() { return MetricsSnapshot.EMPTY; }
+    };
+
+    static SecretsInstrumentation create(Properties p) {
+        return Config.getBoolean(p, "secrets.metrics", false) ? new SecretsMetrics() : NOOP;
+    }
+}
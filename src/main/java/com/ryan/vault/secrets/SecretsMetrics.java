@@ -0,0 +1,73 @@
+package com.ryan.vault.secrets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default {@link SecretsInstrumentation}: LongAdder counters and {@link LatencyHistogram} timers,
+ * kept in memory. Recording never locks; {@link #snapshot()} copies the current values.
+ *
+ * Enabled with secrets.metrics=true, or pass an instance to
+ * {@link SecretsClientFactory#create(java.util.Properties, SecretsInstrumentation)} to share it.
+ */
+public final class SecretsMetrics implements SecretsInstrumentation {
+
+    private final ConcurrentHashMap<Key, LongAdder> counters = new ConcurrentHashMap<Key, LongAdder>();
+    private final ConcurrentHashMap<Key, LatencyHistogram> timers = new ConcurrentHashMap<Key, LatencyHistogram>();
+
+    @Override
+    public Counter counter(String name, String provider, String mount) {
+        LongAdder adder = counters.computeIfAbsent(new Key(name, provider, mount), k -> new LongAdder());
+        return adder::increment;
+    }
+
+    @Override
+    public Timer timer(String name, String provider, String mount) {
+        LatencyHistogram histogram = timers.computeIfAbsent(new Key(name, provider, mount), k -> new LatencyHistogram());
+        return histogram::record;
+    }
+
+    @Override
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.CounterValue> counterValues = new ArrayList<MetricsSnapshot.CounterValue>();
+        for (Map.Entry<Key, LongAdder> e : counters.entrySet()) {
+            Key k = e.getKey();
+            counterValues.add(new MetricsSnapshot.CounterValue(k.name, k.provider, k.mount, e.getValue().sum()));
+        }
+        List<MetricsSnapshot.TimerValue> timerValues = new ArrayList<MetricsSnapshot.TimerValue>();
+        for (Map.Entry<Key, LatencyHistogram> e : timers.entrySet()) {
+            Key k = e.getKey();
+            LatencyHistogram h = e.getValue();
+            timerValues.add(new MetricsSnapshot.TimerValue(k.name, k.provider, k.mount, h.counts(), h.sum(), h.max()));
+        }
+        return new MetricsSnapshot(counterValues, timerValues);
+    }
+
+    private static final class Key {
+        final String name;
+        final String provider;
+        final String mount;
+
+        Key(String name, String provider, String mount) {
+            this.name = name;
+            this.provider = provider == null ? "" : provider;
+            this.mount = mount == null ? "" : mount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return name.equals(k.name) && provider.equals(k.provider) && mount.equals(k.mount);
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * 31 + provider.hashCode()) * 31 + mount.hashCode();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.ryan.vault.secrets;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-flight request de-duplication ("single flight").
+ *
+ * When several threads ask for the same key at the same time, only the first one (the leader)
+ * runs the loader. Every other thread (a waiter) blocks on the leader's result and gets the
+ * same value, or the same exception.
+ *
+ * Nothing is cached here: once the leader finishes, the key is forgotten and the next call
+ * starts a new flight.
+ */
+public final class SingleFlight<V> {
+
+    /** The work to de-duplicate. */
+    public interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight =
+            new ConcurrentHashMap<String, CompletableFuture<V>>();
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs the loader on the calling thread if no flight is running for the key,
+     * otherwise waits for the running flight and returns its outcome.
+     */
+    public V execute(String key, Loader<V> loader) throws Exception {
+        CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        leaders.increment();
+        try {
+            V value = loader.load();
+            mine.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Non-blocking variant: if no flight is running for the key, starts one on the executor;
+     * otherwise joins the running one. The caller's thread never runs the loader.
+     * The returned future is shared between callers, so derive from it instead of completing it.
+     */
+    public CompletableFuture<V> executeAsync(final String key, final Loader<V> loader, Executor executor) {
+        final CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+
+        leaders.increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    mine.complete(loader.load());
+                } catch (Throwable t) {
+                    mine.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(key, mine);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine;
+    }
+
+    /** Number of calls that ran the loader themselves. */
+    public long leaderCount() {
+        return leaders.sum();
+    }
+
+    /** Number of calls that were served by another thread's flight instead of doing their own I/O. */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    /** Number of keys currently being loaded. */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+}
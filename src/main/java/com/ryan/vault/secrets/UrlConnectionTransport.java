@@ -0,0 +1,61 @@
+package com.ryan.vault.secrets;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Transport on top of the JDK's HttpURLConnection.
+ * Kept as the fallback (vault.http.transport=urlconnection). The connection is not
+ * disconnect()ed: closing the fully read stream hands the socket back to the JDK's own
+ * keep-alive cache.
+ */
+public final class UrlConnectionTransport implements HttpTransport {
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    public UrlConnectionTransport(int connectTimeoutMs, int readTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    @Override
+    public HttpResponse send(HttpRequest request) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(request.url()).openConnection();
+        conn.setRequestMethod(request.method());
+        conn.setConnectTimeout(request.connectTimeoutMs() > 0 ? request.connectTimeoutMs() : connectTimeoutMs);
+        conn.setReadTimeout(request.readTimeoutMs() > 0 ? request.readTimeoutMs() : readTimeoutMs);
+        for (Map.Entry<String, String> h : request.headers().entrySet()) {
+            conn.setRequestProperty(h.getKey(), h.getValue());
+        }
+        if (request.body() != null) {
+            conn.setDoOutput(true);
+            OutputStream out = conn.getOutputStream();
+            out.write(request.body());
+            out.close();
+        }
+
+        final int code = conn.getResponseCode();
+        InputStream in = (code >= 200 && code < 300) ? conn.getInputStream() : conn.getErrorStream();
+        final InputStream body = in != null ? in : new ByteArrayInputStream(new byte[0]);
+        final HttpURLConnection c = conn;
+        return new HttpResponse() {
+            @Override public int status() { return code; }
+            @Override public String header(String name) { return c.getHeaderField(name); }
+            @Override public InputStream body() { return body; }
+            @Override public void close() {
+                try { body.close(); } catch (IOException ignored) {}
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        // connections are owned by the JDK keep-alive cache
+    }
+}
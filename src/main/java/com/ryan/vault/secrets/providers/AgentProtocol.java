@@ -0,0 +1,322 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.Config;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Wire format and sockets shared by {@link LocalAgentServer} and {@link LocalAgentSecretsClient}.
+ *
+ * Frame: int length (of what follows) | int id | byte code | payload
+ *  - requests:  code = op; responses: code = status, id = the request's id (answers may come out of order)
+ *  - strings: int byte length + UTF-8
+ *
+ * Handshake: both sides prove they hold the agent's token without sending it, so a client never
+ * trusts a process that merely took over the socket or the port:
+ *  - HELLO client-nonce → OK agent-nonce agent-proof (the client hangs up if the proof is wrong)
+ *  - AUTH client-proof → OK (the agent hangs up if the proof is wrong)
+ *  where a proof is HMAC-SHA256(token, role | client-nonce | agent-nonce), role "agent" or "client".
+ *
+ * Requests:
+ *  - GET_ALL path → OK int n (key value)* | NOT_FOUND message | ERROR int httpStatus message
+ *  - INVALIDATE path → OK
+ *
+ * Address (secrets.agent.address): unix:/path/to/socket or tcp:127.0.0.1:port. Unix domain
+ * sockets need JDK 16+ and are opened through reflection so the library still runs on Java 8.
+ * By default the socket and the token file (secrets.agent.tokenFile) live in
+ * java.io.tmpdir/vault-secrets-agent-<user>, a directory created owner-only (0700) before the
+ * agent binds, and refused by both sides if another user owns it or can enter it. There is no
+ * default TCP address: without Unix domain sockets, tcp: must be configured explicitly.
+ */
+final class AgentProtocol {
+
+    static final byte OP_HELLO = 1;
+    static final byte OP_GET_ALL = 2;
+    static final byte OP_INVALIDATE = 3;
+    static final byte OP_AUTH = 4;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_NOT_FOUND = 1;
+    static final byte STATUS_ERROR = 2;
+
+    static final int MAX_FRAME = 16 * 1024 * 1024;   // answers
+    static final int MAX_REQUEST = 64 * 1024;        // requests, read by the agent
+    static final int MAX_HELLO = 64;                 // before the client is authenticated
+
+    static final int NONCE_BYTES = 32;
+    static final String AGENT_ROLE = "agent";
+    static final String CLIENT_ROLE = "client";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Set<PosixFilePermission> GROUP_OR_OTHERS = EnumSet.of(
+            PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE);
+
+    private AgentProtocol() {}
+
+    /** One received frame; payload is positioned after the code. */
+    static final class Frame {
+        final int id;
+        final byte code;
+        final ByteBuffer payload;
+
+        Frame(int id, byte code, ByteBuffer payload) {
+            this.id = id;
+            this.code = code;
+            this.payload = payload;
+        }
+    }
+
+    /** Builds one frame; the payload is written through the DataOutputStream. */
+    static final class FrameWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        FrameWriter(int id, byte code) throws IOException {
+            out.writeInt(0); // length, patched in toBuffer()
+            out.writeInt(id);
+            out.writeByte(code);
+        }
+
+        FrameWriter string(String s) throws IOException {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+            return this;
+        }
+
+        FrameWriter bytes(byte[] b) throws IOException {
+            out.writeInt(b.length);
+            out.write(b);
+            return this;
+        }
+
+        FrameWriter integer(int i) throws IOException {
+            out.writeInt(i);
+            return this;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            buf.putInt(0, buf.limit() - 4);
+            return buf;
+        }
+    }
+
+    static String readString(ByteBuffer b) throws IOException {
+        return new String(readBytes(b), StandardCharsets.UTF_8);
+    }
+
+    static byte[] readBytes(ByteBuffer b) throws IOException {
+        if (b.remaining() < 4) throw new IOException("Malformed agent frame");
+        int len = b.getInt();
+        if (len < 0 || len > b.remaining()) throw new IOException("Malformed agent frame");
+        byte[] bytes = new byte[len];
+        b.get(bytes);
+        return bytes;
+    }
+
+    /** Blocking read of one frame; null at end of stream. */
+    static Frame readFrame(ReadableByteChannel channel) throws IOException {
+        return readFrame(channel, MAX_FRAME);
+    }
+
+    /** Same, rejecting frames longer than maxLength (not counting the length header) before reading them. */
+    static Frame readFrame(ReadableByteChannel channel, int maxLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        if (!readFully(channel, header, true)) return null;
+        int length = header.getInt(0);
+        if (length < 5 || length > maxLength) throw new IOException("Bad agent frame length: " + length);
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(channel, body, false);
+        body.flip();
+        return new Frame(body.getInt(), body.get(), body);
+    }
+
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buf, boolean eofAllowed) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                if (eofAllowed && buf.position() == 0) return false;
+                throw new EOFException("Agent connection closed mid-frame");
+            }
+        }
+        return true;
+    }
+
+    /** Callers serialize writes per channel. */
+    static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    // ---- handshake ----
+
+    static byte[] nonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /** HMAC of both nonces keyed by the token; the role keeps one side's proof from being replayed as the other's. */
+    static byte[] proof(byte[] token, String role, byte[] clientNonce, byte[] agentNonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(token, "HmacSHA256"));
+            mac.update(role.getBytes(StandardCharsets.UTF_8));
+            mac.update(clientNonce);
+            mac.update(agentNonce);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    // ---- addresses and sockets ----
+
+    /** Owner-only home of the default socket and token file. */
+    static File defaultDirectory() {
+        return new File(System.getProperty("java.io.tmpdir"), "vault-secrets-agent-" + System.getProperty("user.name"));
+    }
+
+    /** The configured address; without one, the default Unix socket, or an error where there is none. */
+    static String address(Properties p) {
+        String address = Config.get(p, "secrets.agent.address", "");
+        if (!address.isEmpty()) return address;
+        if (!unixSocketsSupported()) {
+            throw new IllegalArgumentException("Unix domain sockets need JDK 16+: set secrets.agent.address=tcp:127.0.0.1:<port>");
+        }
+        return "unix:" + new File(defaultDirectory(), "agent.sock").getPath();
+    }
+
+    static String tokenFile(Properties p) {
+        return Config.get(p, "secrets.agent.tokenFile", new File(defaultDirectory(), "agent.token").getPath());
+    }
+
+    /**
+     * When file is in the default directory: creates that directory owner-only if it is missing,
+     * and fails if it is a link, belongs to another user or is open to group or others. Whoever
+     * controls the directory could swap the socket or the token. Other locations are the
+     * operator's choice and are not checked.
+     */
+    static void checkDirectory(Path file) throws IOException {
+        Path dir = defaultDirectory().toPath();
+        if (!dir.equals(file.toAbsolutePath().getParent())) return;
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(dir); // e.g. Windows, where java.io.tmpdir is already per user
+            return;
+        }
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (FileAlreadyExistsException e) {
+            // created earlier, by us or not: checked below
+        }
+        PosixFileAttributes attrs = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal me = FileSystems.getDefault().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attrs.isDirectory() || !attrs.owner().equals(me)
+                || !Collections.disjoint(attrs.permissions(), GROUP_OR_OTHERS)) {
+            throw new IOException(dir + " must be a directory owned by " + me.getName() + " with permissions rwx------");
+        }
+    }
+
+    static boolean isUnix(String address) {
+        return address.startsWith("unix:");
+    }
+
+    static String unixPath(String address) {
+        return address.substring("unix:".length());
+    }
+
+    static boolean unixSocketsSupported() {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    static SocketChannel connect(String address) throws IOException {
+        if (isUnix(address)) {
+            SocketChannel channel = (SocketChannel) openWithFamily(SocketChannel.class);
+            try {
+                channel.connect(unixAddress(unixPath(address)));
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        SocketChannel channel = SocketChannel.open(tcpAddress(address));
+        channel.socket().setTcpNoDelay(true);
+        return channel;
+    }
+
+    static ServerSocketChannel bind(String address) throws IOException {
+        if (isUnix(address)) {
+            ServerSocketChannel server = (ServerSocketChannel) openWithFamily(ServerSocketChannel.class);
+            server.bind(unixAddress(unixPath(address)));
+            return server;
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(tcpAddress(address));
+        return server;
+    }
+
+    private static InetSocketAddress tcpAddress(String address) {
+        String hostPort = address.startsWith("tcp:") ? address.substring(4) : address;
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("secrets.agent.address needs tcp:host:port: " + address);
+        return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+
+    // JDK 16+ API, reached through reflection: UnixDomainSocketAddress.of(path), XxxChannel.open(UNIX)
+    private static SocketAddress unixAddress(String path) throws IOException {
+        try {
+            Method of = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+            return (SocketAddress) of.invoke(null, path);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unix domain sockets need JDK 16+; use secrets.agent.address=tcp:127.0.0.1:<port>", e);
+        }
+    }
+
+    private static Object openWithFamily(Class<?> channelType) throws IOException {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            return channelType.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        } catch (IllegalArgumentException | ReflectiveOperationException e) {
+            throw new IOException("Unix domain sockets need JDK 16+; use secrets.agent.address=tcp:127.0.0.1:<port>", e);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.Config;
+import com.ryan.vault.secrets.SecretException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Encrypted on-disk copy of the secret cache, so a restarted JVM can serve secrets while
+ * Vault is unreachable (e.g. during a maintenance window).
+ *
+ * Properties:
+ *  - secrets.snapshot.path: file to use (feature is off when missing)
+ *  - secrets.snapshot.key: base64 AES key (16/24/32 bytes). When missing, the key is derived
+ *    from role_id + secret_id with PBKDF2 and a random salt kept in the file header.
+ *  - secrets.snapshot.maxAgeSeconds: entries older than this are not served (default 86400,
+ *    0 = no limit). The age counts from the last successful Vault read, across restarts.
+ *
+ * File layout: "VSNP" | version | salt(16) | iv(12) | AES-GCM(ciphertext + tag).
+ * The header is authenticated as GCM associated data, so any change to the file is detected.
+ * Writes go to a temp file created with owner-only (600) permissions, are fsync'ed, then
+ * atomically renamed over the old snapshot. Loads memory-map the file.
+ */
+final class CacheSnapshot {
+
+    private static final byte[] MAGIC = {'V', 'S', 'N', 'P'};
+    private static final byte VERSION = 1;
+    private static final int SALT_LEN = 16;
+    private static final int IV_LEN = 12;
+    private static final int TAG_BITS = 128;
+    private static final int HEADER_LEN = MAGIC.length + 1 + SALT_LEN + IV_LEN;
+    private static final int PBKDF2_ITERATIONS = 65536;
+
+    private final Path file;
+    private final SecretKey suppliedKey;  // null = derive from credentials
+    private final char[] credentials;
+    private final long maxAgeMillis;
+    private final SecureRandom random = new SecureRandom();
+
+    // Derived key and the salt it was derived with, reused for every write
+    private byte[] salt;
+    private SecretKey derivedKey;
+
+    private CacheSnapshot(Path file, SecretKey suppliedKey, char[] credentials, long maxAgeMillis) {
+        this.file = file;
+        this.suppliedKey = suppliedKey;
+        this.credentials = credentials;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /** Returns null when secrets.snapshot.path is not set. */
+    static CacheSnapshot create(Properties p, String roleId, String secretId) {
+        String path = Config.get(p, "secrets.snapshot.path", "");
+        if (path.isEmpty()) return null;
+
+        String keyB64 = Config.get(p, "secrets.snapshot.key", "");
+        SecretKey key = null;
+        if (!keyB64.isEmpty()) {
+            byte[] raw = Base64.getDecoder().decode(keyB64);
+            if (raw.length != 16 && raw.length != 24 && raw.length != 32) {
+                throw new IllegalArgumentException("secrets.snapshot.key must be a base64 AES key of 16, 24 or 32 bytes");
+            }
+            key = new SecretKeySpec(raw, "AES");
+        }
+        long maxAgeMillis = Math.max(0L, Config.getLong(p, "secrets.snapshot.maxAgeSeconds", 86400L)) * 1000L;
+        return new CacheSnapshot(Paths.get(path), key, (roleId + ":" + secretId).toCharArray(), maxAgeMillis);
+    }
+
+    /**
+     * Reads the snapshot. Returns an empty map when there is no file yet.
+     * Loaded entries are already expired; callers only use them as stale-if-error data, until
+     * staleIfErrorUntil (fetchedAt + maxAgeSeconds).
+     */
+    synchronized Map<String, CachedDocument> load() throws SecretException {
+        if (!Files.exists(file)) return Collections.emptyMap();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LEN + TAG_BITS / 8) throw new SecretException("Secrets snapshot is truncated: " + file);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            byte[] header = new byte[HEADER_LEN];
+            mapped.get(header);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || header[MAGIC.length] != VERSION) {
+                throw new SecretException("Not a secrets snapshot (or unsupported version): " + file);
+            }
+            byte[] fileSalt = Arrays.copyOfRange(header, MAGIC.length + 1, MAGIC.length + 1 + SALT_LEN);
+            byte[] iv = Arrays.copyOfRange(header, MAGIC.length + 1 + SALT_LEN, HEADER_LEN);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, keyFor(fileSalt), new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(header);
+            ByteBuffer plain = ByteBuffer.allocate(cipher.getOutputSize(mapped.remaining()));
+            cipher.doFinal(mapped, plain); // decrypts straight from the mapped file
+            plain.flip();
+            try {
+                return decode(plain);
+            } finally {
+                wipe(plain);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new SecretException("Cannot decrypt secrets snapshot (wrong key or tampered file): " + file, e);
+        } catch (IOException | BufferUnderflowException e) {
+            throw new SecretException("Cannot read secrets snapshot: " + file, e);
+        }
+    }
+
+    /** Encrypts and atomically replaces the snapshot file. */
+    synchronized void write(Map<String, CachedDocument> documents) throws SecretException {
+        byte[] plain = encode(documents);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            byte[] fileSalt = salt != null ? salt : newSalt();
+            byte[] iv = new byte[IV_LEN];
+            random.nextBytes(iv);
+
+            byte[] header = new byte[HEADER_LEN];
+            System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+            header[MAGIC.length] = VERSION;
+            System.arraycopy(fileSalt, 0, header, MAGIC.length + 1, SALT_LEN);
+            System.arraycopy(iv, 0, header, MAGIC.length + 1 + SALT_LEN, IV_LEN);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, keyFor(fileSalt), new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(header);
+            byte[] sealed = cipher.doFinal(plain);
+
+            Files.deleteIfExists(tmp);
+            createOwnerOnly(tmp);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(header));
+                channel.write(ByteBuffer.wrap(sealed));
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (GeneralSecurityException | IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+            throw new SecretException("Cannot write secrets snapshot: " + file, e);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    private SecretKey keyFor(byte[] fileSalt) throws GeneralSecurityException {
+        if (suppliedKey != null) return suppliedKey;
+        if (derivedKey == null || !Arrays.equals(salt, fileSalt)) {
+            PBEKeySpec spec = new PBEKeySpec(credentials, fileSalt, PBKDF2_ITERATIONS, 256);
+            try {
+                byte[] raw = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+                derivedKey = new SecretKeySpec(raw, "AES");
+                salt = fileSalt.clone();
+            } finally {
+                spec.clearPassword();
+            }
+        }
+        return derivedKey;
+    }
+
+    private byte[] newSalt() {
+        byte[] s = new byte[SALT_LEN];
+        random.nextBytes(s);
+        return s;
+    }
+
+    private static void createOwnerOnly(Path tmp) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tmp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tmp);
+            tmp.toFile().setReadable(false, false);
+            tmp.toFile().setReadable(true, true);
+            tmp.toFile().setWritable(false, false);
+            tmp.toFile().setWritable(true, true);
+        }
+    }
+
+    /**
+     * count | (path | fetchedAt | fieldCount | (key | value)*)* ; strings are length-prefixed UTF-8.
+     * Written straight into one array of the exact size, so the caller can zero every plaintext byte.
+     */
+    private static byte[] encode(Map<String, CachedDocument> documents) throws SecretException {
+        int size = 4;
+        for (Map.Entry<String, CachedDocument> e : documents.entrySet()) {
+            size += 4 + utf8Length(e.getKey()) + 8 + 4;
+            for (Map.Entry<String, String> field : e.getValue().values.entrySet()) {
+                size += 4 + utf8Length(field.getKey()) + 4 + utf8Length(field.getValue());
+            }
+        }
+        byte[] plain = new byte[size];
+        ByteBuffer out = ByteBuffer.wrap(plain);
+        CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            out.putInt(documents.size());
+            for (Map.Entry<String, CachedDocument> e : documents.entrySet()) {
+                writeString(out, utf8, e.getKey());
+                out.putLong(e.getValue().fetchedAt);
+                Map<String, String> values = e.getValue().values;
+                out.putInt(values.size());
+                for (Map.Entry<String, String> field : values.entrySet()) {
+                    writeString(out, utf8, field.getKey());
+                    writeString(out, utf8, field.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            Arrays.fill(plain, (byte) 0);
+            throw new SecretException("Cannot encode secrets snapshot", e);
+        }
+        return plain;
+    }
+
+    private Map<String, CachedDocument> decode(ByteBuffer in) {
+        long oldest = maxAgeMillis > 0L ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+        Map<String, CachedDocument> documents = new LinkedHashMap<String, CachedDocument>();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String path = readString(in);
+            long fetchedAt = in.getLong();
+            int fields = in.getInt();
+            Map<String, String> values = new LinkedHashMap<String, String>();
+            for (int f = 0; f < fields; f++) {
+                values.put(readString(in), readString(in));
+            }
+            if (fetchedAt >= oldest) {
+                long usableUntil = maxAgeMillis > 0L ? fetchedAt + maxAgeMillis : Long.MAX_VALUE;
+                documents.put(path, new CachedDocument(Collections.unmodifiableMap(values), -1L,
+                        fetchedAt, fetchedAt, fetchedAt, fetchedAt, usableUntil));
+            }
+        }
+        return documents;
+    }
+
+    /** Encodes in place: no intermediate byte[] holding the value. */
+    private static void writeString(ByteBuffer out, CharsetEncoder utf8, String s) {
+        int lengthAt = out.position();
+        out.putInt(0);
+        utf8.reset();
+        CoderResult result = utf8.encode(CharBuffer.wrap(s), out, true);
+        if (!result.isUnderflow()) throw new IllegalStateException("Snapshot buffer too small: " + result);
+        utf8.flush(out);
+        out.putInt(lengthAt, out.position() - lengthAt - 4);
+    }
+
+    /** Bytes of s in UTF-8, lone surrogates counted as the one-byte replacement. */
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /** Decodes straight from the plaintext buffer, which the caller wipes: no extra byte[] copy to zero. */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) throw new BufferUnderflowException();
+        if (!in.hasArray()) {
+            byte[] b = new byte[length];
+            in.get(b);
+            String s = new String(b, StandardCharsets.UTF_8);
+            Arrays.fill(b, (byte) 0);
+            return s;
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    private static void wipe(ByteBuffer buffer) {
+        if (buffer.hasArray()) Arrays.fill(buffer.array(), (byte) 0);
+    }
+}
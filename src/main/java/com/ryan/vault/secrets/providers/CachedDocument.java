@@ -0,0 +1,44 @@
+package com.ryan.vault.secrets.providers;
+
+import java.util.Map;
+
+/**
+ * A secret document (all key/values of one path) plus the timestamps that drive the cache.
+ *
+ * Timeline of one entry (epoch millis):
+ *
+ *   fetchedAt ---- refreshAt ---- expiresAt ---- staleWhileRevalidateUntil / staleIfErrorUntil
+ *      fresh        fresh, but       stale: only served while a background refresh
+ *                   a background     runs (SWR) or while Vault is failing (SIE)
+ *                   refresh is due
+ *
+ * Without refresh-ahead, refreshAt == expiresAt. Without stale windows, both stale
+ * timestamps equal expiresAt.
+ *
+ * version is the KV v2 data.metadata.version the values were read at (-1 = unknown).
+ */
+final class CachedDocument {
+    final Map<String, String> values;
+    final long version;
+    final long fetchedAt;
+    final long refreshAt;
+    final long expiresAt;
+    final long staleWhileRevalidateUntil;
+    final long staleIfErrorUntil;
+
+    CachedDocument(Map<String, String> values, long version, long fetchedAt, long refreshAt, long expiresAt,
+                   long staleWhileRevalidateUntil, long staleIfErrorUntil) {
+        this.values = values;
+        this.version = version;
+        this.fetchedAt = fetchedAt;
+        this.refreshAt = refreshAt;
+        this.expiresAt = expiresAt;
+        this.staleWhileRevalidateUntil = staleWhileRevalidateUntil;
+        this.staleIfErrorUntil = staleIfErrorUntil;
+    }
+
+    /** When the cache may drop the entry for good. */
+    long retainUntil() {
+        return Math.max(expiresAt, Math.max(staleWhileRevalidateUntil, staleIfErrorUntil));
+    }
+}
@@ -0,0 +1,422 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Composite provider: secrets.provider = chain:vault,file,env
+ *
+ * A lookup goes to the first member; when it does not have the secret
+ * (SecretNotFoundException) or is unreachable or overloaded ({@link SecretException#isOutage()}),
+ * the next one is asked, and so on. Any other error (400, 401, 403, ...) is thrown at once: a
+ * revoked Vault policy must not turn into whatever a later member holds.
+ * getAll returns the document of the first member that has the path (documents are not merged).
+ * The error thrown when every member failed is a SecretNotFoundException only if every member
+ * answered "not found"; otherwise it is a SecretException caused by the first outage.
+ *
+ * Hedged reads (secrets.chain.hedge=true): when a member has not answered within the latency
+ * budget, the next one is called as well and the first success wins. The budget is the
+ * secrets.chain.hedgePercentile (default 0.95) of the first member's observed latency, once
+ * 100 calls were timed, and secrets.chain.hedgeDelayMs (default 50) until then or when the
+ * percentile is 0. Hedging uses the members' async API, so it only pays off for members that
+ * really run asynchronously (Vault on a cache miss).
+ *
+ * Per-member latency, hits, misses, errors and hedges are recorded (SecretsInstrumentation.CHAIN_*,
+ * tagged with the member name); see {@link #stats()}.
+ */
+public class ChainSecretsClient implements AsyncSecretsClient {
+
+    private static final int HEDGE_MIN_SAMPLES = 100;
+    private static final long HEDGE_UPDATE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Member[] members;
+    private final SecretsInstrumentation stats;
+
+    private final boolean hedge;
+    private final long hedgeDelayNanos;   // fixed budget (and the budget before enough samples)
+    private final double hedgePercentile; // 0 = always the fixed budget
+    private final ScheduledThreadPoolExecutor hedgeTimer;
+    private volatile long adaptiveDelayNanos = -1L;
+    private volatile long adaptiveUpdatedAt = Long.MIN_VALUE;
+
+    /**
+     * @param names   member provider names, in order (used as the provider tag of the stats)
+     * @param clients member providers, same order; closed with the chain
+     * @param instrumentation where the stats go; with NOOP the chain keeps its own registry
+     */
+    public ChainSecretsClient(List<String> names, List<? extends AsyncSecretsClient> clients,
+                              Properties p, SecretsInstrumentation instrumentation) {
+        if (names.isEmpty() || names.size() != clients.size()) {
+            throw new IllegalArgumentException("chain needs one name per provider: " + names);
+        }
+        this.stats = instrumentation == SecretsInstrumentation.NOOP ? new SecretsMetrics() : instrumentation;
+        this.members = new Member[clients.size()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new Member(i, names.get(i), clients.get(i), stats);
+        }
+
+        this.hedge = Config.getBoolean(p, "secrets.chain.hedge", false) && members.length > 1;
+        this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, Config.getLong(p, "secrets.chain.hedgeDelayMs", 50L)));
+        this.hedgePercentile = Config.getDouble(p, "secrets.chain.hedgePercentile", 0.95d);
+        if (hedgePercentile < 0d || hedgePercentile >= 1d) {
+            throw new IllegalArgumentException("secrets.chain.hedgePercentile must be in [0, 1): " + hedgePercentile);
+        }
+        if (hedge) {
+            this.hedgeTimer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("secrets-chain-hedge"));
+            this.hedgeTimer.setRemoveOnCancelPolicy(true);
+        } else {
+            this.hedgeTimer = null;
+        }
+    }
+
+    /** Per-member latency and hit/miss/error/hedge counters (plus whatever else the instrumentation holds). */
+    public MetricsSnapshot stats() {
+        return stats.snapshot();
+    }
+
+    /** Members in lookup order. */
+    public List<AsyncSecretsClient> members() {
+        List<AsyncSecretsClient> clients = new ArrayList<AsyncSecretsClient>(members.length);
+        for (Member m : members) clients.add(m.client);
+        return clients;
+    }
+
+    @Override
+    public EnumSet<SecretCapability> capabilities() {
+        EnumSet<SecretCapability> capabilities = EnumSet.of(SecretCapability.KV_READ);
+        for (Member m : members) {
+            if (m.client.capabilities().contains(SecretCapability.WATCH)) capabilities.add(SecretCapability.WATCH);
+        }
+        return capabilities;
+    }
+
+    @Override
+    public String getRequired(String path, String key) throws SecretException {
+        return lookup(valueOf(path, key));
+    }
+
+    @Override
+    public Map<String, String> getAll(final String path) throws SecretException {
+        return lookup(allOf(path));
+    }
+
+    @Override
+    public CompletableFuture<String> getRequiredAsync(String path, String key) {
+        return lookupAsync(valueOf(path, key));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getAllAsync(String path) {
+        return lookupAsync(allOf(path));
+    }
+
+    /**
+     * Each member gets one getMany call with the refs the previous members could not serve,
+     * so Vault still reads its paths in parallel. Not hedged.
+     */
+    @Override
+    public Map<SecretRef, SecretResult> getMany(Collection<SecretRef> refs) {
+        Map<SecretRef, SecretResult> results = new LinkedHashMap<SecretRef, SecretResult>();
+        for (SecretRef ref : refs) results.put(ref, null); // request order, duplicates dropped
+        List<SecretRef> remaining = new ArrayList<SecretRef>(results.keySet());
+        Map<SecretRef, Failures> failures = new HashMap<SecretRef, Failures>();
+        for (Member m : members) {
+            if (remaining.isEmpty()) break;
+            Map<SecretRef, SecretResult> answered = m.client.getMany(remaining);
+            List<SecretRef> next = new ArrayList<SecretRef>();
+            for (SecretRef ref : remaining) {
+                SecretResult r = answered.get(ref);
+                if (r != null && r.isSuccess()) {
+                    m.hits.increment();
+                    results.put(ref, r);
+                    continue;
+                }
+                SecretException error = r == null ? new SecretException("No result from " + m.name) : r.error();
+                m.failed(error);
+                if (!fallsThrough(error)) {
+                    results.put(ref, SecretResult.failure(error));
+                    continue;
+                }
+                Failures f = failures.get(ref);
+                if (f == null) {
+                    f = new Failures();
+                    failures.put(ref, f);
+                }
+                f.add(m, error);
+                next.add(ref);
+            }
+            remaining = next;
+        }
+        for (SecretRef ref : remaining) {
+            results.put(ref, SecretResult.failure(failures.get(ref).toException(ref.path() + "." + ref.key())));
+        }
+        return results;
+    }
+
+    /** Delegates to the first member that can watch. */
+    @Override
+    public SecretWatch watch(String path, String key, SecretChangeListener listener) throws SecretException {
+        for (Member m : members) {
+            if (m.client.capabilities().contains(SecretCapability.WATCH)) return m.client.watch(path, key, listener);
+        }
+        return SecretWatch.NONE;
+    }
+
+    @Override
+    public void invalidate(String path) {
+        for (Member m : members) m.client.invalidate(path);
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (Member m : members) m.client.invalidateAll();
+    }
+
+    @Override
+    public void close() {
+        if (hedgeTimer != null) hedgeTimer.shutdownNow();
+        for (Member m : members) m.client.close();
+    }
+
+    private static Lookup<String> valueOf(final String path, final String key) {
+        return new Lookup<String>() {
+            @Override public String call(AsyncSecretsClient c) throws SecretException { return c.getRequired(path, key); }
+            @Override public CompletableFuture<String> callAsync(AsyncSecretsClient c) { return c.getRequiredAsync(path, key); }
+            @Override public String describe() { return path + "." + key; }
+        };
+    }
+
+    private static Lookup<Map<String, String>> allOf(final String path) {
+        return new Lookup<Map<String, String>>() {
+            @Override public Map<String, String> call(AsyncSecretsClient c) throws SecretException { return c.getAll(path); }
+            @Override public CompletableFuture<Map<String, String>> callAsync(AsyncSecretsClient c) { return c.getAllAsync(path); }
+            @Override public String describe() { return path; }
+        };
+    }
+
+    /** Without hedging: one member after the other on the caller's thread. */
+    private <T> T lookup(Lookup<T> lookup) throws SecretException {
+        if (hedge) return await(lookupAsync(lookup));
+
+        Failures failures = new Failures();
+        for (Member m : members) {
+            long start = System.nanoTime();
+            try {
+                T value = lookup.call(m.client);
+                m.hits.increment();
+                return value;
+            } catch (SecretException e) {
+                m.failed(e);
+                if (!fallsThrough(e)) throw e;
+                failures.add(m, e);
+            } finally {
+                m.lookup.record(System.nanoTime() - start);
+            }
+        }
+        throw failures.toException(lookup.describe());
+    }
+
+    private <T> CompletableFuture<T> lookupAsync(Lookup<T> lookup) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        new Attempt<T>(lookup, result).start(0, false);
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws SecretException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecretException("Interrupted while waiting for the provider chain", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SecretException) throw (SecretException) cause;
+            throw new SecretException("Provider chain lookup failed", cause);
+        }
+    }
+
+    /** Latency budget before the next member is called as well. */
+    private long hedgeDelayNanos() {
+        if (hedgePercentile <= 0d) return hedgeDelayNanos;
+        long now = System.nanoTime();
+        if (now - adaptiveUpdatedAt >= HEDGE_UPDATE_NANOS || adaptiveUpdatedAt == Long.MIN_VALUE) {
+            // Refreshed at most once a second: a snapshot copies the histograms
+            adaptiveUpdatedAt = now;
+            long delay = -1L;
+            for (MetricsSnapshot.TimerValue t : stats.snapshot().timers()) {
+                if (SecretsInstrumentation.CHAIN_LOOKUP.equals(t.name()) && members[0].name.equals(t.provider())
+                        && t.count() >= HEDGE_MIN_SAMPLES) {
+                    delay = Math.max(1L, t.percentileNanos(hedgePercentile));
+                }
+            }
+            adaptiveDelayNanos = delay;
+        }
+        long adaptive = adaptiveDelayNanos;
+        return adaptive > 0L ? adaptive : hedgeDelayNanos;
+    }
+
+    /** Not found or an outage: the next member may answer. Anything else ends the lookup. */
+    private static boolean fallsThrough(SecretException error) {
+        return error instanceof SecretNotFoundException || error.isOutage();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /** One lookup, as a blocking and as an async call. */
+    private interface Lookup<T> {
+        T call(AsyncSecretsClient client) throws SecretException;
+
+        CompletableFuture<T> callAsync(AsyncSecretsClient client);
+
+        /** path or path.key, for error messages. */
+        String describe();
+    }
+
+    /**
+     * One async lookup through the chain. Member i+1 is started once, either because member i
+     * missed or had an outage, or because member i was slower than the hedge budget; the result
+     * fails when every started member failed and none is left to start, or at once on an error
+     * that does not fall through.
+     */
+    private final class Attempt<T> {
+        private final Lookup<T> lookup;
+        private final CompletableFuture<T> result;
+        private final AtomicInteger latest = new AtomicInteger(); // highest member index started
+        private final AtomicInteger pending = new AtomicInteger(1); // members started or claimed, member 0 included
+        private final Failures failures = new Failures();
+
+        Attempt(Lookup<T> lookup, CompletableFuture<T> result) {
+            this.lookup = lookup;
+            this.result = result;
+        }
+
+        void start(final int i, boolean hedged) {
+            final Member m = members[i];
+            if (hedged) m.hedges.increment();
+            final long start = System.nanoTime();
+
+            CompletableFuture<T> call;
+            try {
+                call = lookup.callAsync(m.client);
+            } catch (RuntimeException e) {
+                call = new CompletableFuture<T>();
+                call.completeExceptionally(e);
+            }
+
+            if (hedge && i + 1 < members.length && !call.isDone()) {
+                try {
+                    final ScheduledFuture<?> timer = hedgeTimer.schedule(() -> {
+                        if (!result.isDone() && startsNext(i)) start(i + 1, true);
+                    }, hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+                    result.whenComplete((value, error) -> timer.cancel(false));
+                } catch (RejectedExecutionException ignored) {
+                    // chain is closing: plain fallback only
+                }
+            }
+
+            call.whenComplete((value, error) -> {
+                m.lookup.record(System.nanoTime() - start);
+                if (error == null) {
+                    m.hits.increment();
+                    result.complete(value);
+                    pending.decrementAndGet();
+                    return;
+                }
+                Throwable cause = unwrap(error);
+                SecretException failure = cause instanceof SecretException
+                        ? (SecretException) cause
+                        : new SecretException(m.name + " failed: " + cause.getMessage(), cause);
+                m.failed(failure);
+                if (!fallsThrough(failure)) {
+                    result.completeExceptionally(failure);
+                    pending.decrementAndGet();
+                    return;
+                }
+                failures.add(m, failure);
+                if (!result.isDone() && startsNext(i)) start(i + 1, false);
+                if (pending.decrementAndGet() == 0) result.completeExceptionally(failures.toException(lookup.describe()));
+            });
+        }
+
+        /**
+         * True for exactly one caller, and only if member i is the latest started and has a successor.
+         * The winner counts member i+1 as pending right away, so a failure of member i racing with the
+         * hedge timer cannot see pending at 0 and fail the lookup while member i+1 is still starting.
+         */
+        private boolean startsNext(int i) {
+            if (i + 1 >= members.length || !latest.compareAndSet(i, i + 1)) return false;
+            pending.incrementAndGet();
+            return true;
+        }
+    }
+
+    /** Member failures of one lookup: not-found answers vs. outages. */
+    private final class Failures {
+        private final boolean[] failed = new boolean[members.length];
+        private SecretException firstOutage;
+
+        synchronized void add(Member m, SecretException error) {
+            failed[m.index] = true;
+            if (!(error instanceof SecretNotFoundException) && firstOutage == null) firstOutage = error;
+        }
+
+        synchronized SecretException toException(String what) {
+            StringBuilder providers = new StringBuilder(); // chain order, whatever the completion order
+            for (int i = 0; i < failed.length; i++) {
+                if (!failed[i]) continue;
+                if (providers.length() > 0) providers.append(", ");
+                providers.append(members[i].name);
+            }
+            if (firstOutage == null) {
+                return new SecretNotFoundException("Secret not found in any provider [" + providers + "]: " + what);
+            }
+            return new SecretException("No provider could answer for " + what + " [" + providers + "]: "
+                    + firstOutage.getMessage(), firstOutage.getStatusCode(), firstOutage);
+        }
+    }
+
+    private static final class Member {
+        final int index;
+        final String name;
+        final AsyncSecretsClient client;
+        final SecretsInstrumentation.Timer lookup;
+        final SecretsInstrumentation.Counter hits;
+        final SecretsInstrumentation.Counter misses;
+        final SecretsInstrumentation.Counter errors;
+        final SecretsInstrumentation.Counter hedges;
+
+        Member(int index, String name, AsyncSecretsClient client, SecretsInstrumentation stats) {
+            this.index = index;
+            this.name = name;
+            this.client = client;
+            this.lookup = stats.timer(SecretsInstrumentation.CHAIN_LOOKUP, name, "");
+            this.hits = stats.counter(SecretsInstrumentation.CHAIN_HIT, name, "");
+            this.misses = stats.counter(SecretsInstrumentation.CHAIN_MISS, name, "");
+            this.errors = stats.counter(SecretsInstrumentation.CHAIN_ERROR, name, "");
+            this.hedges = stats.counter(SecretsInstrumentation.CHAIN_HEDGE, name, "");
+        }
+
+        void failed(SecretException error) {
+            if (error instanceof SecretNotFoundException) misses.increment();
+            else errors.increment();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.SecretChangeListener;
+import com.ryan.vault.secrets.SecretNotFoundException;
+import com.ryan.vault.secrets.SecretWatch;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background poller behind watch(...) for remote providers.
+ *
+ * All watches of one path share one poll, whatever the number of keys and listeners, and all
+ * paths are polled on the provider's one scheduler.
+ *  - Each poll asks the source for the path's version first (cheap metadata read) and only
+ *    reads the document when the version moved, or when the source has no versions.
+ *  - Intervals adapt: back to the minimum after a change, doubled (up to the maximum) after
+ *    a poll without change or a failed poll.
+ *  - Every delay gets random jitter, so paths and instances do not poll in lockstep.
+ *  - Listeners fire only when a watched key's value really differs from the last one seen.
+ */
+final class ChangePoller {
+
+    /** What the poller needs from the provider. */
+    interface Source {
+        /** Current version of the path, or -1 when unknown (then the document is read). May throw SecretNotFoundException. */
+        long version(String path) throws Exception;
+
+        /** Reads the whole document (and refreshes the provider's cache). May throw SecretNotFoundException. */
+        CachedDocument read(String path) throws Exception;
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Source source;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final double jitter;
+    private final ConcurrentHashMap<String, PathState> paths = new ConcurrentHashMap<String, PathState>();
+    private volatile boolean closed;
+
+    ChangePoller(ScheduledExecutorService scheduler, Source source,
+                 long minIntervalMillis, long maxIntervalMillis, double jitter) {
+        this.scheduler = scheduler;
+        this.source = source;
+        this.minIntervalMillis = Math.max(100L, minIntervalMillis);
+        this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalMillis);
+        this.jitter = Math.max(0d, Math.min(0.5d, jitter));
+    }
+
+    /** Registers a listener; currentValue is the baseline it is compared against (null = absent). */
+    SecretWatch watch(String path, String key, SecretChangeListener listener, String currentValue) {
+        final Registration registration = new Registration(key, listener, currentValue);
+        final PathState state;
+        synchronized (this) {
+            PathState existing = paths.get(path);
+            if (existing == null) {
+                existing = new PathState(path);
+                paths.put(path, existing);
+                existing.registrations.add(registration);
+                schedule(existing, minIntervalMillis);
+            } else {
+                existing.registrations.add(registration);
+            }
+            state = existing;
+        }
+        return () -> unwatch(state, registration);
+    }
+
+    private synchronized void unwatch(PathState state, Registration registration) {
+        state.registrations.remove(registration);
+        if (state.registrations.isEmpty()) paths.remove(state.path, state); // its next poll stops
+    }
+
+    void close() {
+        closed = true;
+        paths.clear();
+    }
+
+    private void schedule(PathState state, long intervalMillis) {
+        state.intervalMillis = intervalMillis;
+        double factor = 1d + jitter * (ThreadLocalRandom.current().nextDouble() * 2d - 1d);
+        try {
+            scheduler.schedule(() -> poll(state), (long) (intervalMillis * factor), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // provider is closing
+        }
+    }
+
+    private void poll(PathState state) {
+        if (closed || paths.get(state.path) != state) return;
+
+        boolean changed = false;
+        try {
+            long version = source.version(state.path);
+            if (version < 0L || version != state.version) {
+                CachedDocument document = source.read(state.path);
+                state.version = document.version;
+                changed = fire(state, document.values);
+            }
+        } catch (SecretNotFoundException e) {
+            state.version = -1L;
+            changed = fire(state, null);
+        } catch (Exception e) {
+            // source failing: keep the last values, poll less often
+        }
+
+        if (closed || paths.get(state.path) != state) return;
+        schedule(state, changed ? minIntervalMillis : Math.min(maxIntervalMillis, state.intervalMillis * 2L));
+    }
+
+    private boolean fire(PathState state, Map<String, String> values) {
+        boolean changed = false;
+        for (Registration r : state.registrations) {
+            String next = values == null ? null : values.get(r.key);
+            if (Objects.equals(next, r.lastValue)) continue;
+            r.lastValue = next;
+            changed = true;
+            try {
+                r.listener.onChange(state.path, r.key, next);
+            } catch (RuntimeException ignored) {
+                // a failing listener must not stop the others
+            }
+        }
+        return changed;
+    }
+
+    private static final class PathState {
+        final String path;
+        final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+        // Only touched by the poll task of this path (one at a time)
+        long version = -1L;
+        long intervalMillis;
+
+        PathState(String path) {
+            this.path = path;
+        }
+    }
+
+    private static final class Registration {
+        final String key;
+        final SecretChangeListener listener;
+        volatile String lastValue;
+
+        Registration(String key, SecretChangeListener listener, String lastValue) {
+            this.key = key;
+            this.listener = listener;
+            this.lastValue = lastValue;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ryan.vault.secrets.providers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consecutive-failure circuit breaker.
+ *  - closed: every request goes through; failureThreshold failures in a row open it
+ *  - open: requests are refused for openMillis
+ *  - half-open: after that, one trial request goes through; success closes, failure reopens
+ * Lock-free: one volatile deadline, a failure counter and a trial flag.
+ */
+final class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    private volatile long openUntil; // 0 = closed
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(1L, openMillis);
+    }
+
+    /** Closed, or open long enough for a trial. Does not reserve the trial (see {@link #tryAcquire()}). */
+    boolean isAvailable() {
+        long until = openUntil;
+        return until == 0L || (System.currentTimeMillis() >= until && !trialInFlight.get());
+    }
+
+    /** True when a request may go through now; in half-open state only for the one trial request. */
+    boolean tryAcquire() {
+        long until = openUntil;
+        if (until == 0L) return true;
+        if (System.currentTimeMillis() < until) return false;
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+        openUntil = 0L;
+        trialInFlight.set(false);
+    }
+
+    void onFailure() {
+        if (openUntil != 0L) {
+            // failed trial (or a request that was already in flight when it opened): stay open
+            openUntil = System.currentTimeMillis() + openMillis;
+            trialInFlight.set(false);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+
+    /** Lets the next request through as a trial right away (e.g. a health probe saw the node recover). */
+    void allowTrialNow() {
+        if (openUntil != 0L) openUntil = System.currentTimeMillis();
+    }
+
+    boolean isOpen() {
+        return openUntil != 0L;
+    }
+
+    /** When an open breaker allows its next trial (0 when closed). */
+    long openUntil() {
+        return openUntil;
+    }
+
+    @Override
+    public String toString() {
+        return openUntil == 0L ? "closed" : "open";
+    }
+}
@@ -0,0 +1,147 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.SecretsInstrumentation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent cache with per-entry expiration and approximate LRU eviction.
+ * Selected with secrets.cache.impl=concurrent.
+ *
+ * Compared to {@link LruExpiringCache}:
+ *  - get(...) takes no lock. It is a ConcurrentHashMap lookup plus a volatile write of the
+ *    access time (skipped when the time has not changed), instead of relinking a LinkedHashMap
+ *    node under a global monitor.
+ *  - Eviction is approximate. Entries are not kept in access order. When put(...) pushes the
+ *    size over maxEntries, one thread (tryLock, nobody waits) scans the map once, drops every
+ *    expired entry, and then drops the least recently accessed entries until the size is back
+ *    to a low-water mark (90% of maxEntries). The scan cost is paid once per ~10% of inserts.
+ *  - Expired entries are removed lazily by get(...) and in batches by the same sweep, which
+ *    also runs on put(...) at most once per second.
+ *  - The size may briefly exceed maxEntries while another thread holds the eviction lock.
+ */
+final class ConcurrentExpiringCache<V> implements SecretCache<V> {
+
+    private static final long SWEEP_INTERVAL_MILLIS = 1000L;
+
+    private static final Comparator<Candidate<?>> BY_ACCESS_TIME =
+            (a, b) -> Long.compare(a.accessTime, b.accessTime);
+
+    private final int maxEntries;
+    private final int lowWaterMark;
+    private final SecretsInstrumentation.Counter evictions;
+    private final ConcurrentHashMap<String, Node<V>> map;
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private volatile long nextSweepAt;
+
+    private static final class Node<V> {
+        final V value;
+        final long expiresAt;
+        volatile long lastAccess;
+        Node(V value, long expiresAt, long now) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * Eviction candidate with the access time read once. The sort must not read
+     * Node.lastAccess itself: get(...) keeps moving it, and TimSort rejects a comparator
+     * whose answers change mid-sort.
+     */
+    private static final class Candidate<V> {
+        final String key;
+        final Node<V> node;
+        final long accessTime;
+        Candidate(String key, Node<V> node) {
+            this.key = key;
+            this.node = node;
+            this.accessTime = node.lastAccess;
+        }
+    }
+
+    ConcurrentExpiringCache(int maxEntries, SecretsInstrumentation.Counter evictions) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.lowWaterMark = Math.max(1, this.maxEntries - Math.max(1, this.maxEntries / 10));
+        this.evictions = evictions;
+        this.map = new ConcurrentHashMap<String, Node<V>>();
+    }
+
+    @Override
+    public V get(String key) {
+        Node<V> n = map.get(key);
+        if (n == null) return null;
+        long now = System.currentTimeMillis();
+        if (now >= n.expiresAt) {
+            map.remove(key, n);
+            return null;
+        }
+        // Avoid dirtying the cache line on every hit when the clock has not moved.
+        if (n.lastAccess != now) n.lastAccess = now;
+        return n.value;
+    }
+
+    @Override
+    public void put(String key, V value, long expiresAt) {
+        long now = System.currentTimeMillis();
+        map.put(key, new Node<V>(value, expiresAt, now));
+        if (map.size() > maxEntries || now >= nextSweepAt) {
+            sweep(now);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    @Override
+    public Map<String, V> entries() {
+        long now = System.currentTimeMillis();
+        Map<String, V> copy = new LinkedHashMap<String, V>();
+        for (Map.Entry<String, Node<V>> e : map.entrySet()) {
+            if (now < e.getValue().expiresAt) copy.put(e.getKey(), e.getValue().value);
+        }
+        return copy;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    /** Batched cleanup: drop expired entries, then the least recently used ones while over capacity. */
+    private void sweep(long now) {
+        if (!sweepLock.tryLock()) return; // someone else is already cleaning up
+        try {
+            nextSweepAt = now + SWEEP_INTERVAL_MILLIS;
+            List<Candidate<V>> live = new ArrayList<Candidate<V>>(map.size());
+            for (Map.Entry<String, Node<V>> e : map.entrySet()) {
+                Node<V> n = e.getValue();
+                if (now >= n.expiresAt) {
+                    map.remove(e.getKey(), n);
+                } else {
+                    live.add(new Candidate<V>(e.getKey(), n));
+                }
+            }
+            if (map.size() <= maxEntries) return;
+
+            int toEvict = Math.min(live.size(), map.size() - lowWaterMark);
+            Collections.sort(live, BY_ACCESS_TIME);
+            for (int i = 0; i < toEvict; i++) {
+                Candidate<V> c = live.get(i);
+                if (map.remove(c.key, c.node)) evictions.increment();
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+}
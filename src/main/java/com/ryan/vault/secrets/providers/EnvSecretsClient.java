@@ -6,13 +6,70 @@ import com.ryan.vault.secrets.SecretException;
 import com.ryan.vault.secrets.SecretNotFoundException;
 import com.ryan.vault.secrets.SecretsClient;
 
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provider that reads secrets from environment variables.
  * Convention: path + '_' + key with separators normalized and upper-cased.
+ *
+ * The environment cannot change while the JVM runs, so it is copied once into an immutable
+ * index (blank values dropped), and the normalized variable name of each (path, key) is
+ * remembered: a repeated getRequired is two map lookups and allocates nothing.
+ * On Windows, where System.getenv(name) ignores case, the index is keyed by upper-case names
+ * and the prefix is matched ignoring case too, so MyApp_Config_Password still resolves.
+ *
+ * Property: secrets.env.prefix (e.g. APP_SECRETS_) → only variables starting with it are
+ * indexed, and path "myapp/config", key "password" reads APP_SECRETS_MYAPP_CONFIG_PASSWORD.
  */
-public class EnvSecretsClient implements SecretsClient {
+public class EnvSecretsClient implements AsyncSecretsClient {
+
+    // Cap on remembered names / getAll results, in case callers build paths dynamically
+    private static final int MAX_CACHED_PATHS = 4096;
+
+    // Windows environment variable names are case-insensitive
+    private static final boolean IGNORE_CASE = System.getProperty("os.name", "").startsWith("Windows");
+
+    private final String prefix;
+    private final Map<String, String> variables; // name without prefix -> value
+
+    // path -> key -> normalized variable name (without the prefix)
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, String>> names =
+            new ConcurrentHashMap<String, ConcurrentHashMap<String, String>>();
+    private final ConcurrentHashMap<String, Map<String, String>> documents =
+            new ConcurrentHashMap<String, Map<String, String>>();
+
+    public EnvSecretsClient() {
+        this(new Properties());
+    }
+
+    public EnvSecretsClient(Properties config) {
+        this(config, System.getenv(), IGNORE_CASE);
+    }
+
+    EnvSecretsClient(Properties config, Map<String, String> environment, boolean ignoreCase) {
+        this.prefix = Config.get(config, "secrets.env.prefix", "");
+        Map<String, String> indexed = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : environment.entrySet()) {
+            String name = e.getKey();
+            String value = e.getValue();
+            if (name.regionMatches(ignoreCase, 0, this.prefix, 0, this.prefix.length())
+                    && name.length() > this.prefix.length()
+                    && value != null && !value.trim().isEmpty()) {
+                String unprefixed = name.substring(this.prefix.length());
+                // lookups use upper-case names (see normalize), so fold the index to match
+                indexed.put(ignoreCase ? unprefixed.toUpperCase(Locale.ROOT) : unprefixed, value);
+            }
+        }
+        this.variables = Collections.unmodifiableMap(indexed);
+    }
 
     @Override
     public EnumSet<SecretCapability> capabilities() {
@@ -21,21 +78,84 @@ public class EnvSecretsClient implements SecretsClient {
 
     @Override
     public String getRequired(String path, String key) throws SecretException {
-        String env = (path + "_" + key)
+        String env = nameOf(path, key);
+
+        String value = variables.get(env);
+        if (value == null) {
+            throw new SecretNotFoundException("Missing environment secret: " + prefix + env);
+        }
+        return value;
+    }
+
+    /**
+     * Returns every environment variable named NORMALIZED_PATH_*.
+     * Keys are the remainder of the variable name in lower case, e.g. MYAPP_CONFIG_PASSWORD -> password.
+     */
+    @Override
+    public Map<String, String> getAll(String path) throws SecretException {
+        Map<String, String> document = documents.get(path);
+        if (document == null) {
+            document = collect(path);
+            if (documents.size() < MAX_CACHED_PATHS) documents.putIfAbsent(path, document);
+        }
+        if (document.isEmpty()) {
+            throw new SecretNotFoundException("Missing environment secrets with prefix: " + prefix + normalize(path) + "_");
+        }
+        return document;
+    }
+
+    private Map<String, String> collect(String path) {
+        String pathPrefix = normalize(path) + "_";
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> e : variables.entrySet()) {
+            String name = e.getKey();
+            if (name.length() > pathPrefix.length() && name.startsWith(pathPrefix)) {
+                result.put(name.substring(pathPrefix.length()).toLowerCase(), e.getValue());
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** Normalized variable name (without the prefix), remembered per (path, key). */
+    private String nameOf(String path, String key) {
+        ConcurrentHashMap<String, String> forPath = names.get(path);
+        if (forPath != null) {
+            String name = forPath.get(key);
+            if (name != null) return name;
+        }
+        String name = normalize(path + "_" + key);
+        if (forPath == null) {
+            if (names.size() >= MAX_CACHED_PATHS) return name;
+            forPath = new ConcurrentHashMap<String, String>();
+            ConcurrentHashMap<String, String> raced = names.putIfAbsent(path, forPath);
+            if (raced != null) forPath = raced;
+        }
+        if (forPath.size() < MAX_CACHED_PATHS) forPath.putIfAbsent(key, name);
+        return name;
+    }
+
+    /** In-memory lookup: always completes on the caller's thread. */
+    @Override
+    public CompletableFuture<String> getRequiredAsync(String path, String key) {
+        return AsyncSecretsClient.completedNow(() -> getRequired(path, key));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getAllAsync(String path) {
+        return AsyncSecretsClient.completedNow(() -> getAll(path));
+    }
+
+    private static String normalize(String name) {
+        return name
                 .replace("/", "_")
                 .replace("-", "_")
                 .replace(".", "_")
                 .toUpperCase();
-
-        String value = System.getenv(env);
-        if (value == null || value.trim().isEmpty()) {
-            throw new SecretNotFoundException("Missing environment secret: " + env);
-        }
-        return value;
     }
 
     @Override
     public void close() {
-        // no-op
+        names.clear();
+        documents.clear();
     }
 }
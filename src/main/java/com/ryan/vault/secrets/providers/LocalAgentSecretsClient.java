@@ -0,0 +1,328 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * secrets.provider = local-agent: reads through the node-local {@link LocalAgentServer}
+ * instead of logging in to Vault from every JVM.
+ *
+ * One connection per client, opened on first use and reopened after a failure. Requests are
+ * pipelined: each carries an id, any number can be in flight, and a reader thread completes them
+ * as the answers arrive (in any order). Documents are kept in a small near-cache, so hot paths
+ * do not even cross the socket.
+ *
+ * Properties:
+ *  - secrets.agent.address, secrets.agent.tokenFile: must match the agent's (see {@link AgentProtocol});
+ *    a tcp: address is only used when configured, never as a default
+ *  - secrets.agent.timeoutMs: per request (default 5000)
+ *  - secrets.agent.nearCacheTtlSeconds: 0 disables the near-cache (default 5)
+ *  - secrets.agent.nearCacheMaxEntries (default 1000)
+ */
+public class LocalAgentSecretsClient implements AsyncSecretsClient {
+
+    private final String address;
+    private final String tokenFile;
+    private final long timeoutMs;
+    private final long nearCacheTtlMillis;
+    private final SecretCache<Map<String, String>> nearCache;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private Connection connection; // guarded by this
+    private volatile boolean closed;
+
+    public LocalAgentSecretsClient(Properties p) {
+        this.address = AgentProtocol.address(p);
+        this.tokenFile = AgentProtocol.tokenFile(p);
+        this.timeoutMs = Math.max(1L, Config.getLong(p, "secrets.agent.timeoutMs", 5000L));
+        this.nearCacheTtlMillis = TimeUnit.SECONDS.toMillis(Config.getLong(p, "secrets.agent.nearCacheTtlSeconds", 5L));
+        this.nearCache = SecretCache.create("concurrent",
+                Config.getInt(p, "secrets.agent.nearCacheMaxEntries", 1000), SecretsInstrumentation.NOOP_COUNTER);
+        this.timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("secrets-agent-timeout"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public EnumSet<SecretCapability> capabilities() {
+        return EnumSet.of(SecretCapability.KV_READ);
+    }
+
+    @Override
+    public String getRequired(String path, String key) throws SecretException {
+        return valueOf(path, key, getAll(path));
+    }
+
+    @Override
+    public Map<String, String> getAll(String path) throws SecretException {
+        Map<String, String> cached = nearCache.get(path);
+        if (cached != null) return cached;
+        try {
+            return getAllAsync(path).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecretException("Interrupted while waiting for the secrets agent", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SecretException) throw (SecretException) cause;
+            throw new SecretException("Secrets agent lookup failed for " + path, cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getRequiredAsync(final String path, final String key) {
+        return getAllAsync(path).thenApply(values -> {
+            try {
+                return valueOf(path, key, values);
+            } catch (SecretException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getAllAsync(final String path) {
+        Map<String, String> cached = nearCache.get(path);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        CompletableFuture<Map<String, String>> result = new CompletableFuture<Map<String, String>>();
+        send(AgentProtocol.OP_GET_ALL, path).whenComplete((frame, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            try {
+                Map<String, String> values = decode(path, frame);
+                if (nearCacheTtlMillis > 0L) nearCache.put(path, values, System.currentTimeMillis() + nearCacheTtlMillis);
+                result.complete(values);
+            } catch (SecretException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /** Drops the path here and in the agent, so every JVM on the host reads it again from Vault. */
+    @Override
+    public void invalidate(String path) {
+        nearCache.remove(path);
+        try {
+            send(AgentProtocol.OP_INVALIDATE, path).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // agent unreachable: nothing cached there to go stale either way
+        }
+    }
+
+    /** Only the near-cache: the agent's cache is shared with other processes. */
+    @Override
+    public void invalidateAll() {
+        nearCache.clear();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection c;
+        synchronized (this) {
+            c = connection;
+            connection = null;
+        }
+        if (c != null) c.fail(new SecretException("Secrets agent client closed"));
+        timer.shutdownNow();
+        nearCache.clear();
+    }
+
+    private static String valueOf(String path, String key, Map<String, String> values) throws SecretException {
+        String value = values.get(key);
+        if (value == null) throw new SecretNotFoundException("Key not found: " + path + "." + key);
+        return value;
+    }
+
+    private static Map<String, String> decode(String path, AgentProtocol.Frame frame) throws SecretException {
+        ByteBuffer b = frame.payload;
+        try {
+            if (frame.code == AgentProtocol.STATUS_OK) {
+                int n = b.getInt();
+                Map<String, String> values = new LinkedHashMap<String, String>(Math.max(4, n * 2));
+                for (int i = 0; i < n; i++) values.put(AgentProtocol.readString(b), AgentProtocol.readString(b));
+                return Collections.unmodifiableMap(values);
+            }
+            if (frame.code == AgentProtocol.STATUS_NOT_FOUND) {
+                throw new SecretNotFoundException(AgentProtocol.readString(b));
+            }
+            int status = b.getInt();
+            throw new SecretException("Secrets agent: " + AgentProtocol.readString(b), status);
+        } catch (IOException | RuntimeException e) {
+            throw new SecretException("Malformed answer from the secrets agent for " + path, e);
+        }
+    }
+
+    /** Sends one request; the future fails with a SecretException on connection problems or timeout. */
+    private CompletableFuture<AgentProtocol.Frame> send(byte op, String path) {
+        CompletableFuture<AgentProtocol.Frame> answer = new CompletableFuture<AgentProtocol.Frame>();
+        Connection c;
+        try {
+            c = connection();
+        } catch (SecretException e) {
+            answer.completeExceptionally(e);
+            return answer;
+        }
+        int id = c.register(answer);
+        try {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                if (c.pending.remove(id) != null) {
+                    answer.completeExceptionally(new SecretException(
+                            "Secrets agent did not answer within " + timeoutMs + " ms: " + path));
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            answer.whenComplete((frame, error) -> timeout.cancel(false));
+        } catch (RejectedExecutionException e) {
+            c.pending.remove(id);
+            answer.completeExceptionally(new SecretException("Secrets agent client closed"));
+            return answer;
+        }
+        try {
+            c.write(new AgentProtocol.FrameWriter(id, op).string(path).toBuffer());
+        } catch (IOException e) {
+            c.fail(new SecretException("Secrets agent connection lost (" + address + "): " + e.getMessage(), e));
+        }
+        return answer;
+    }
+
+    /** The open connection, or a new one (connect + handshake, in which the agent proves itself first). */
+    private synchronized Connection connection() throws SecretException {
+        if (closed) throw new SecretException("Secrets agent client closed");
+        if (connection != null && !connection.failed) return connection;
+
+        byte[] token;
+        try {
+            AgentProtocol.checkDirectory(Paths.get(tokenFile));
+            token = Files.readAllBytes(Paths.get(tokenFile));
+        } catch (IOException e) {
+            throw new SecretException("Cannot read the secrets agent token " + tokenFile + " (is the agent running?)", e);
+        }
+        try {
+            connection = handshake(token);
+            return connection;
+        } finally {
+            Arrays.fill(token, (byte) 0);
+        }
+    }
+
+    private Connection handshake(byte[] token) throws SecretException {
+        SocketChannel channel;
+        try {
+            channel = AgentProtocol.connect(address);
+        } catch (IOException e) {
+            throw new SecretException("Cannot connect to the secrets agent at " + address + ": " + e.getMessage(), e);
+        }
+
+        Connection c = new Connection(channel);
+        new DaemonThreadFactory("secrets-agent-reader").newThread(c::readLoop).start();
+        byte[] clientNonce = AgentProtocol.nonce();
+        try {
+            CompletableFuture<AgentProtocol.Frame> hello = new CompletableFuture<AgentProtocol.Frame>();
+            c.write(new AgentProtocol.FrameWriter(c.register(hello), AgentProtocol.OP_HELLO).bytes(clientNonce).toBuffer());
+            AgentProtocol.Frame challenge = hello.get(timeoutMs, TimeUnit.MILLISECONDS);
+            byte[] agentNonce = AgentProtocol.readBytes(challenge.payload);
+            byte[] agentProof = AgentProtocol.readBytes(challenge.payload);
+            if (challenge.code != AgentProtocol.STATUS_OK || agentNonce.length != AgentProtocol.NONCE_BYTES
+                    || !MessageDigest.isEqual(AgentProtocol.proof(token, AgentProtocol.AGENT_ROLE, clientNonce, agentNonce), agentProof)) {
+                c.fail(new SecretException("Handshake failed"));
+                throw new SecretException("The process at " + address + " could not prove it holds the token in "
+                        + tokenFile + ": not the secrets agent, or a stale token file");
+            }
+
+            CompletableFuture<AgentProtocol.Frame> auth = new CompletableFuture<AgentProtocol.Frame>();
+            c.write(new AgentProtocol.FrameWriter(c.register(auth), AgentProtocol.OP_AUTH)
+                    .bytes(AgentProtocol.proof(token, AgentProtocol.CLIENT_ROLE, clientNonce, agentNonce)).toBuffer());
+            auth.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            c.fail(new SecretException("Interrupted"));
+            throw new SecretException("Interrupted while connecting to the secrets agent", e);
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            c.fail(new SecretException("Handshake failed"));
+            throw new SecretException("Secrets agent at " + address + " refused the connection (token mismatch?)", e);
+        }
+        return c;
+    }
+
+    /** One socket: writes serialized by a lock, answers dispatched by id from the reader thread. */
+    private static final class Connection {
+        final SocketChannel channel;
+        final ConcurrentHashMap<Integer, CompletableFuture<AgentProtocol.Frame>> pending =
+                new ConcurrentHashMap<Integer, CompletableFuture<AgentProtocol.Frame>>();
+        final AtomicInteger ids = new AtomicInteger();
+        volatile boolean failed;
+        private volatile SecretException failure;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        int register(CompletableFuture<AgentProtocol.Frame> answer) {
+            int id = ids.incrementAndGet();
+            pending.put(id, answer);
+            if (failed && pending.remove(id) != null) answer.completeExceptionally(failure); // lost the race with fail()
+            return id;
+        }
+
+        void write(ByteBuffer frame) throws IOException {
+            synchronized (this) {
+                AgentProtocol.writeFully(channel, frame);
+            }
+        }
+
+        void readLoop() {
+            try {
+                AgentProtocol.Frame frame;
+                while ((frame = AgentProtocol.readFrame(channel)) != null) {
+                    CompletableFuture<AgentProtocol.Frame> answer = pending.remove(frame.id);
+                    if (answer != null) answer.complete(frame); // else: timed out already
+                }
+                fail(new SecretException("Secrets agent closed the connection"));
+            } catch (IOException e) {
+                fail(new SecretException("Secrets agent connection lost: " + e.getMessage(), e));
+            }
+        }
+
+        /** Marks the connection dead, closes it and fails everything in flight. */
+        void fail(SecretException error) {
+            failure = error;
+            failed = true;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // best effort
+            }
+            for (Integer id : pending.keySet()) {
+                CompletableFuture<AgentProtocol.Frame> answer = pending.remove(id);
+                if (answer != null) answer.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.AsyncSecretsClient;
+import com.ryan.vault.secrets.Config;
+import com.ryan.vault.secrets.DaemonThreadFactory;
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretNotFoundException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local secrets agent: one backend client (one Vault login, one cache) shared by every JVM
+ * on the host through {@link LocalAgentSecretsClient} (secrets.provider=local-agent).
+ *
+ * Listens on secrets.agent.address (see {@link AgentProtocol}). Only local processes that can read
+ * secrets.agent.tokenFile get answers: the agent writes a random token there at start (owner-only
+ * permissions, like the socket file), and a connection must prove it holds that token in the
+ * handshake, after the agent has proved the same to it.
+ *
+ * Each connection has a reader thread and a writer thread. Lookups go to the backend's async API
+ * and are answered as they complete, so a slow path does not hold up the others on the same
+ * connection. Concurrent misses on one path are coalesced by the backend (Vault's single-flight).
+ * Finished answers are queued for the connection's writer and never written by the thread that
+ * completed them (a backend pool thread): a client that stops reading only fills its own queue,
+ * and is dropped once more than 4 MB of answers wait for it.
+ *
+ * Until a connection has authenticated it may send two frames of at most 64 bytes, within
+ * secrets.agent.handshakeTimeoutMs; after that, requests are limited to 64 KB. Connections over
+ * secrets.agent.maxConnections are closed as soon as they are accepted.
+ *
+ * Properties:
+ *  - secrets.agent.address, secrets.agent.tokenFile: see {@link AgentProtocol}
+ *  - secrets.agent.handshakeTimeoutMs (default 5000)
+ *  - secrets.agent.maxConnections (default 256)
+ */
+public final class LocalAgentServer implements AutoCloseable {
+
+    private static final long MAX_BACKLOG_BYTES = 4L * 1024 * 1024;
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0); // writer sentinel
+
+    private final String address;
+    private final Path tokenFile;
+    private final byte[] token;
+    private final AsyncSecretsClient backend;
+    private final ServerSocketChannel server;
+    private final long handshakeTimeoutMs;
+    private final int maxConnections;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadFactory connectionThreads = new DaemonThreadFactory("secrets-agent-conn");
+    private final Set<Peer> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean closed;
+
+    private LocalAgentServer(String address, Path tokenFile, byte[] token, AsyncSecretsClient backend,
+                             ServerSocketChannel server, long handshakeTimeoutMs, int maxConnections) {
+        this.address = address;
+        this.tokenFile = tokenFile;
+        this.token = token;
+        this.backend = backend;
+        this.server = server;
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+        this.maxConnections = maxConnections;
+        this.timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("secrets-agent-timeout"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Binds the address, writes the token file and starts accepting. When they are in the default
+     * directory, it is created owner-only (or checked) first, so the socket is never reachable by others.
+     * The token is written only once the bind has succeeded: a second start on an address that an
+     * agent is already serving fails without replacing that agent's token.
+     * The backend is not closed with the agent.
+     */
+    public static LocalAgentServer start(Properties p, AsyncSecretsClient backend) throws IOException {
+        String address = AgentProtocol.address(p);
+        Path tokenFile = Paths.get(AgentProtocol.tokenFile(p));
+        AgentProtocol.checkDirectory(tokenFile);
+        if (AgentProtocol.isUnix(address)) AgentProtocol.checkDirectory(Paths.get(AgentProtocol.unixPath(address)));
+
+        if (AgentProtocol.isUnix(address)) removeStaleSocket(address);
+        ServerSocketChannel server = AgentProtocol.bind(address);
+        byte[] token = new byte[32];
+        try {
+            if (AgentProtocol.isUnix(address)) restrictToOwner(Paths.get(AgentProtocol.unixPath(address)));
+            new SecureRandom().nextBytes(token);
+            writeOwnerOnly(tokenFile, token);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            if (AgentProtocol.isUnix(address)) Files.deleteIfExists(Paths.get(AgentProtocol.unixPath(address)));
+            throw e;
+        }
+
+        LocalAgentServer agent = new LocalAgentServer(address, tokenFile, token, backend, server,
+                Math.max(1L, Config.getLong(p, "secrets.agent.handshakeTimeoutMs", 5000L)),
+                Math.max(1, Config.getInt(p, "secrets.agent.maxConnections", 256)));
+        Thread acceptor = new DaemonThreadFactory("secrets-agent-accept").newThread(agent::acceptLoop);
+        acceptor.start();
+        return agent;
+    }
+
+    public String address() {
+        return address;
+    }
+
+    /** Lookups and invalidations served since start. */
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // best effort
+        }
+        for (Peer peer : connections) peer.close();
+        timer.shutdownNow();
+        try {
+            if (AgentProtocol.isUnix(address)) Files.deleteIfExists(Paths.get(AgentProtocol.unixPath(address)));
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException ignored) {
+            // best effort
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (closed) return;
+                continue;
+            }
+            if (connections.size() >= maxConnections) {
+                closeQuietly(channel); // only the accept thread adds, so the limit holds
+                continue;
+            }
+            Peer peer = new Peer(channel);
+            connections.add(peer);
+            connectionThreads.newThread(() -> serve(peer)).start();
+        }
+    }
+
+    private void serve(Peer peer) {
+        SocketChannel channel = peer.channel;
+        try {
+            ScheduledFuture<?> deadline = timer.schedule(peer::close, handshakeTimeoutMs, TimeUnit.MILLISECONDS);
+            AgentProtocol.Frame hello = AgentProtocol.readFrame(channel, AgentProtocol.MAX_HELLO);
+            if (hello == null || hello.code != AgentProtocol.OP_HELLO) return;
+            byte[] clientNonce = AgentProtocol.readBytes(hello.payload);
+            if (clientNonce.length != AgentProtocol.NONCE_BYTES) return;
+            byte[] agentNonce = AgentProtocol.nonce();
+            // small frame on a fresh socket, written by this connection's own thread
+            AgentProtocol.writeFully(channel, new AgentProtocol.FrameWriter(hello.id, AgentProtocol.STATUS_OK)
+                    .bytes(agentNonce)
+                    .bytes(AgentProtocol.proof(token, AgentProtocol.AGENT_ROLE, clientNonce, agentNonce))
+                    .toBuffer());
+
+            AgentProtocol.Frame auth = AgentProtocol.readFrame(channel, AgentProtocol.MAX_HELLO);
+            if (auth == null || auth.code != AgentProtocol.OP_AUTH
+                    || !MessageDigest.isEqual(AgentProtocol.proof(token, AgentProtocol.CLIENT_ROLE, clientNonce, agentNonce),
+                            AgentProtocol.readBytes(auth.payload))) {
+                return; // wrong or missing token: just hang up
+            }
+            deadline.cancel(false);
+            connectionThreads.newThread(peer::writeLoop).start();
+            peer.send(new AgentProtocol.FrameWriter(auth.id, AgentProtocol.STATUS_OK).toBuffer());
+
+            AgentProtocol.Frame frame;
+            while ((frame = AgentProtocol.readFrame(channel, AgentProtocol.MAX_REQUEST)) != null) {
+                requests.incrementAndGet();
+                handle(peer, frame);
+            }
+        } catch (IOException | RejectedExecutionException e) {
+            // client went away or sent garbage, or the agent is closing
+        } finally {
+            connections.remove(peer);
+            peer.close();
+        }
+    }
+
+    private void handle(final Peer peer, AgentProtocol.Frame frame) throws IOException {
+        final int id = frame.id;
+        if (frame.code == AgentProtocol.OP_GET_ALL) {
+            String path = AgentProtocol.readString(frame.payload);
+            CompletableFuture<Map<String, String>> lookup;
+            try {
+                lookup = backend.getAllAsync(path);
+            } catch (RuntimeException e) {
+                lookup = new CompletableFuture<Map<String, String>>();
+                lookup.completeExceptionally(e);
+            }
+            lookup.whenComplete((values, error) -> {
+                try {
+                    peer.send(answer(id, values, error));
+                } catch (IOException e) {
+                    peer.close(); // the reader thread sees it and cleans up
+                }
+            });
+        } else if (frame.code == AgentProtocol.OP_INVALIDATE) {
+            backend.invalidate(AgentProtocol.readString(frame.payload));
+            peer.send(new AgentProtocol.FrameWriter(id, AgentProtocol.STATUS_OK).toBuffer());
+        } else {
+            peer.send(new AgentProtocol.FrameWriter(id, AgentProtocol.STATUS_ERROR)
+                    .integer(SecretException.NO_STATUS).string("Unknown agent op: " + frame.code).toBuffer());
+        }
+    }
+
+    private static ByteBuffer answer(int id, Map<String, String> values, Throwable error) throws IOException {
+        if (error == null) {
+            AgentProtocol.FrameWriter w = new AgentProtocol.FrameWriter(id, AgentProtocol.STATUS_OK).integer(values.size());
+            for (Map.Entry<String, String> e : values.entrySet()) w.string(e.getKey()).string(e.getValue());
+            return w.toBuffer();
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof SecretNotFoundException) {
+            return new AgentProtocol.FrameWriter(id, AgentProtocol.STATUS_NOT_FOUND).string(cause.getMessage()).toBuffer();
+        }
+        int status = cause instanceof SecretException ? ((SecretException) cause).getStatusCode() : SecretException.NO_STATUS;
+        return new AgentProtocol.FrameWriter(id, AgentProtocol.STATUS_ERROR)
+                .integer(status).string(String.valueOf(cause.getMessage())).toBuffer();
+    }
+
+    /** One client connection. Answers are queued here and written by the connection's own writer thread. */
+    private static final class Peer {
+        final SocketChannel channel;
+        private final LinkedBlockingQueue<ByteBuffer> outbox = new LinkedBlockingQueue<ByteBuffer>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private volatile boolean closed;
+
+        Peer(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Never blocks: a client with more than MAX_BACKLOG_BYTES of unread answers is dropped. */
+        void send(ByteBuffer frame) {
+            if (closed) return;
+            if (queuedBytes.addAndGet(frame.remaining()) > MAX_BACKLOG_BYTES) {
+                close();
+                return;
+            }
+            outbox.add(frame);
+        }
+
+        void writeLoop() {
+            try {
+                while (true) {
+                    ByteBuffer frame = outbox.take();
+                    if (frame == CLOSE) return;
+                    int size = frame.remaining();
+                    AgentProtocol.writeFully(channel, frame);
+                    queuedBytes.addAndGet(-size);
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        /** Closes the socket (the reader thread then ends) and stops the writer. */
+        void close() {
+            closed = true;
+            outbox.add(CLOSE);
+            closeQuietly(channel);
+        }
+    }
+
+    /** A socket file left by a crashed agent is removed; one that still answers means an agent is running. */
+    private static void removeStaleSocket(String address) throws IOException {
+        Path socket = Paths.get(AgentProtocol.unixPath(address));
+        if (!Files.exists(socket)) return;
+        boolean listening;
+        try {
+            AgentProtocol.connect(address).close();
+            listening = true;
+        } catch (IOException e) {
+            listening = false;
+        }
+        if (listening) throw new IOException("A secrets agent is already listening on " + address);
+        Files.deleteIfExists(socket);
+    }
+
+    /** Written to a temp file that is renamed into place, so clients never read a half-written token. */
+    private static void writeOwnerOnly(Path file, byte[] content) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            restrictToOwner(tmp);
+            Files.write(tmp, content);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void restrictToOwner(Path file) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system: rely on the directory's permissions
+            File f = file.toFile();
+            f.setReadable(false, false);
+            f.setReadable(true, true);
+            f.setWritable(false, false);
+            f.setWritable(true, true);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // best effort
+        }
+    }
+}
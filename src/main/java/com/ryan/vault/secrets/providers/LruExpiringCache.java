@@ -0,0 +1,132 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.SecretsInstrumentation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Simple LRU cache with per-entry expiration.
+ * Thread-safe via internal synchronization (one monitor for every get/put/clear).
+ * Selected with secrets.cache.impl=lru (the default).
+ */
+/**
+ * Each cached item is keyed by secret path and stores:
+ *      - value → the secret document (every key/value under data.data for that path)
+ *      - expiresAt → timestamp (milliseconds since epoch) when it should be treated as expired
+ * So expiration is checked by comparing:
+ *      System.currentTimeMillis() >= expiresAt
+ * **/
+final class LruExpiringCache<V> implements SecretCache<V> {
+    private final int maxEntries;
+    private final SecretsInstrumentation.Counter evictions;
+    private final LinkedHashMap<String, Entry<V>> map;
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+    /**
+     * The cache is built on a LinkedHashMap like this (simplified):
+     *      new LinkedHashMap<String, Entry>(16, 0.75f, true) { ... }
+     * That last parameter is important:
+     *      accessOrder = true
+     * This makes the map maintain entries in access order, not insertion order.
+     * Meaning:
+     *     - whenever you call get(key), that key becomes the “most recently used”
+     *     - the “least recently used” entry naturally stays at the front
+     *
+     * LRU eviction via removeEldestEntry
+     *  Inside the LinkedHashMap, we override "removeEldestEntry" method
+     *  This method is called automatically by put().
+     *  So whenever you insert a new entry, the map checks:
+     *      - “Do I now have more than maxEntries items?”
+     *      - If yes → it automatically evicts the oldest (“eldest”) entry
+     *  Because we are using accessOrder=true, the “eldest” means:
+     *    -  least recently used (LRU)
+     *  So maxEntries protects you from unbounded memory usage.
+     */
+    LruExpiringCache(final int maxEntries, SecretsInstrumentation.Counter evictions) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.evictions = evictions;
+        this.map = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, LruExpiringCache.Entry<V>> eldest) {
+                if (size() <= LruExpiringCache.this.maxEntries) return false;
+                LruExpiringCache.this.evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * What happens when you call get(...)
+     * Step-by-step behavior:
+     * 1. It looks up the entry in the map.
+     * 2. If missing → return null (cache miss)
+     * 3. If present:
+     *      - It checks expiry time.
+     *      - If expired:
+     *          - removes it immediately
+     *          - returns null (treat as cache miss)
+     * 4. If not expired:
+     *      - returns the cached value
+     * IMPORTANT SIDE-EFFECT:
+     * Because LinkedHashMap is in access-order mode, calling map.get(key) also:
+     *      - moves that entry to “most recently used” position.
+     */
+    @Override
+    public synchronized V get(String key) {
+        Entry<V> e = map.get(key);
+        if (e == null) return null;
+        if (System.currentTimeMillis() >= e.expiresAt) {
+            map.remove(key);
+            return null;
+        }
+        return e.value;
+    }
+    /**
+     * What happens when you call put(...)
+     * Step-by-step behavior:
+     * 1. Store the entry (or replace existing entry).
+     * 2. LinkedHashMap automatically evaluates removeEldestEntry(...)
+     * 3. If it now exceeds max size → evicts least recently used entry
+     * So the cache keeps itself within maxEntries automatically.
+     */
+    @Override
+    public synchronized void put(String key, V value, long expiresAt) {
+        map.put(key, new Entry<V>(value, expiresAt));
+    }
+    @Override
+    public synchronized void remove(String key) {
+        map.remove(key);
+    }
+
+    /**
+     * Copy of the live entries, least recently used first.
+     * Iterating does not count as an access, so the LRU order is not changed.
+     */
+    @Override
+    public synchronized Map<String, V> entries() {
+        long now = System.currentTimeMillis();
+        Map<String, V> copy = new LinkedHashMap<String, V>();
+        for (Map.Entry<String, Entry<V>> e : map.entrySet()) {
+            if (now < e.getValue().expiresAt) copy.put(e.getKey(), e.getValue().value);
+        }
+        return copy;
+    }
+
+    /**
+     * What happens when you call clear()
+     *      This removes everything, including secrets.
+     *      Your provider calls this in close() so secrets don’t remain in memory longer than necessary
+     *      when the app shuts down.
+     */
+    @Override
+    public synchronized void clear() {
+        map.clear();
+    }
+}
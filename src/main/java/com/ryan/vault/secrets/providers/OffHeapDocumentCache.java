@@ -0,0 +1,222 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.SecretsInstrumentation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Vault document cache that keeps the secret values off the Java heap, in a {@link SecretArena}.
+ * Selected with secrets.cache.impl=offheap.
+ *
+ *  - Bounded by bytes (secrets.cache.maxBytes), not by entry count: a put evicts least recently
+ *    used documents until the new one fits. A document larger than the whole arena is not cached.
+ *  - Expired documents are dropped when read or when space is needed, before any live one is
+ *    evicted. Dropped, evicted, replaced and removed documents are zeroed right away; clear()
+ *    (called by close()) zeroes and releases the whole arena.
+ *  - get(...) decodes the whole document into a short-lived heap copy; the client uses it for
+ *    getAll, refreshes, stale reads and snapshots. A single-key hit decodes only that value:
+ *    {@link #value(String, String, long)} as a String, {@link #valueChars(String, String, long)}
+ *    as a char[] for callers that do not want a String at all.
+ *
+ * Only the values and keys live off-heap; the timestamps stay in a small heap node.
+ * One monitor, like {@link LruExpiringCache}.
+ *
+ * Layout of a document in the arena (UTF-16 chars, ints take two):
+ *   int count, then per entry: int keyLength, key, int valueLength, value
+ */
+final class OffHeapDocumentCache implements SecretCache<CachedDocument> {
+
+    private final SecretArena arena;
+    private final SecretsInstrumentation.Counter evictions;
+    private final LinkedHashMap<String, Node> map = new LinkedHashMap<String, Node>(16, 0.75f, true);
+
+    private static final class Node {
+        final int[] blocks;
+        final long version;
+        final long fetchedAt;
+        final long refreshAt;
+        final long expiresAt;
+        final long staleWhileRevalidateUntil;
+        final long staleIfErrorUntil;
+        final long retainUntil;
+
+        Node(int[] blocks, CachedDocument d, long retainUntil) {
+            this.blocks = blocks;
+            this.version = d.version;
+            this.fetchedAt = d.fetchedAt;
+            this.refreshAt = d.refreshAt;
+            this.expiresAt = d.expiresAt;
+            this.staleWhileRevalidateUntil = d.staleWhileRevalidateUntil;
+            this.staleIfErrorUntil = d.staleIfErrorUntil;
+            this.retainUntil = retainUntil;
+        }
+    }
+
+    OffHeapDocumentCache(long maxBytes, SecretsInstrumentation.Counter evictions) {
+        this.arena = new SecretArena(maxBytes);
+        this.evictions = evictions;
+    }
+
+    @Override
+    public synchronized CachedDocument get(String key) {
+        Node n = map.get(key);
+        if (n == null) return null;
+        if (System.currentTimeMillis() >= n.retainUntil) {
+            drop(key);
+            return null;
+        }
+        return new CachedDocument(decode(n), n.version, n.fetchedAt, n.refreshAt, n.expiresAt,
+                n.staleWhileRevalidateUntil, n.staleIfErrorUntil);
+    }
+
+    @Override
+    public synchronized void put(String key, CachedDocument value, long expiresAt) {
+        drop(key);
+        int chars = 2;
+        for (Map.Entry<String, String> e : value.values.entrySet()) {
+            chars += 4 + e.getKey().length() + e.getValue().length();
+        }
+        if (2L * chars > arena.maxBytes()) return; // larger than secrets.cache.maxBytes: not cached
+
+        int[] blocks = arena.allocate(chars);
+        if (blocks == null) {
+            dropExpired(System.currentTimeMillis());
+            blocks = arena.allocate(chars);
+        }
+        Iterator<Node> eldest = map.values().iterator(); // least recently used first
+        while (blocks == null && eldest.hasNext()) {
+            Node evicted = eldest.next();
+            eldest.remove();
+            arena.free(evicted.blocks);
+            evictions.increment();
+            blocks = arena.allocate(chars);
+        }
+
+        int i = 0;
+        arena.putInt(blocks, i, value.values.size());
+        i += 2;
+        for (Map.Entry<String, String> e : value.values.entrySet()) {
+            i = write(blocks, i, e.getKey());
+            i = write(blocks, i, e.getValue());
+        }
+        map.put(key, new Node(blocks, value, expiresAt));
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        drop(key);
+    }
+
+    @Override
+    public synchronized Map<String, CachedDocument> entries() {
+        long now = System.currentTimeMillis();
+        Map<String, CachedDocument> copy = new LinkedHashMap<String, CachedDocument>();
+        for (Map.Entry<String, Node> e : map.entrySet()) {
+            Node n = e.getValue();
+            if (now < n.retainUntil) {
+                copy.put(e.getKey(), new CachedDocument(decode(n), n.version, n.fetchedAt, n.refreshAt, n.expiresAt,
+                        n.staleWhileRevalidateUntil, n.staleIfErrorUntil));
+            }
+        }
+        return copy;
+    }
+
+    /** Zeroes every document and releases the arena's memory. */
+    @Override
+    public synchronized void clear() {
+        map.clear();
+        arena.release();
+    }
+
+    /**
+     * One value as a new char[] (no String created), or null when the document is not cached,
+     * is due for a refresh, or has no such key: the caller then takes the regular read path.
+     */
+    synchronized char[] valueChars(String path, String key, long now) {
+        Node n = map.get(path);
+        if (n == null || now >= n.refreshAt || now >= n.expiresAt) return null;
+        int i = find(n, key);
+        if (i < 0) return null;
+        char[] value = new char[arena.getInt(n.blocks, i)];
+        for (int c = 0; c < value.length; c++) value[c] = arena.getChar(n.blocks, i + 2 + c);
+        return value;
+    }
+
+    /** Like {@link #valueChars(String, String, long)}, as a String: the other values stay off-heap. */
+    synchronized String value(String path, String key, long now) {
+        Node n = map.get(path);
+        if (n == null || now >= n.refreshAt || now >= n.expiresAt) return null;
+        int i = find(n, key);
+        if (i < 0) return null;
+        int[] position = {i};
+        return read(n.blocks, position);
+    }
+
+    /** Position of the value length of key in the document, or -1. */
+    private int find(Node n, String key) {
+        int count = arena.getInt(n.blocks, 0);
+        int i = 2;
+        for (int entry = 0; entry < count; entry++) {
+            int keyLength = arena.getInt(n.blocks, i);
+            boolean match = keyLength == key.length();
+            for (int c = 0; match && c < keyLength; c++) {
+                match = arena.getChar(n.blocks, i + 2 + c) == key.charAt(c);
+            }
+            i += 2 + keyLength;
+            if (match) return i;
+            i += 2 + arena.getInt(n.blocks, i);
+        }
+        return -1;
+    }
+
+    /** Off-heap bytes in use by cached documents. */
+    synchronized long usedBytes() {
+        return arena.usedBytes();
+    }
+
+    private void dropExpired(long now) {
+        Iterator<Node> it = map.values().iterator();
+        while (it.hasNext()) {
+            Node n = it.next();
+            if (now >= n.retainUntil) {
+                it.remove();
+                arena.free(n.blocks);
+            }
+        }
+    }
+
+    private void drop(String key) {
+        Node n = map.remove(key);
+        if (n != null) arena.free(n.blocks);
+    }
+
+    private int write(int[] blocks, int i, String s) {
+        arena.putInt(blocks, i, s.length());
+        i += 2;
+        for (int c = 0; c < s.length(); c++) arena.putChar(blocks, i++, s.charAt(c));
+        return i;
+    }
+
+    private Map<String, String> decode(Node n) {
+        int count = arena.getInt(n.blocks, 0);
+        Map<String, String> values = new LinkedHashMap<String, String>(Math.max(4, count * 2));
+        int[] i = {2};
+        for (int entry = 0; entry < count; entry++) values.put(read(n.blocks, i), read(n.blocks, i));
+        return Collections.unmodifiableMap(values);
+    }
+
+    private String read(int[] blocks, int[] position) {
+        int i = position[0];
+        int length = arena.getInt(blocks, i);
+        char[] chars = new char[length];
+        for (int c = 0; c < length; c++) chars[c] = arena.getChar(blocks, i + 2 + c);
+        position[0] = i + 2 + length;
+        String s = new String(chars);
+        Arrays.fill(chars, '\0');
+        return s;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ryan.vault.secrets.providers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a cache warm-up (secrets.preload): how long the login, the prefix listings
+ * and each path read took, and which ones failed. Never contains secret values.
+ */
+public final class PreloadReport {
+
+    /** Timing of one step: the login, a prefix LIST, or a path read. */
+    public static final class Step {
+        private final String name;
+        private final long millis;
+        private final String error;
+
+        Step(String name, long millis, String error) {
+            this.name = name;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public String name() { return name; }
+        public long millis() { return millis; }
+        public boolean isSuccess() { return error == null; }
+        /** Error message, or null on success. */
+        public String error() { return error; }
+    }
+
+    private Step login;
+    private final List<Step> listings = new ArrayList<Step>();
+    private final List<Step> paths = new ArrayList<Step>();
+    private long totalMillis;
+
+    void login(Step step) { this.login = step; }
+    void listing(Step step) { listings.add(step); }
+    void path(Step step) { paths.add(step); }
+    void totalMillis(long totalMillis) { this.totalMillis = totalMillis; }
+
+    /** The AppRole login, or null if it was not needed. */
+    public Step login() { return login; }
+    public List<Step> listings() { return Collections.unmodifiableList(listings); }
+    public List<Step> paths() { return Collections.unmodifiableList(paths); }
+    public long totalMillis() { return totalMillis; }
+
+    public boolean isSuccess() {
+        if (login != null && !login.isSuccess()) return false;
+        for (Step s : listings) if (!s.isSuccess()) return false;
+        for (Step s : paths) if (!s.isSuccess()) return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Secrets preload: ").append(paths.size()).append(" path(s) in ").append(totalMillis).append(" ms\n");
+        if (login != null) append(sb, "login", login);
+        for (Step s : listings) append(sb, "list ", s);
+        for (Step s : paths) append(sb, "read ", s);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String kind, Step s) {
+        sb.append("  ").append(kind).append(' ').append(s.name).append(": ").append(s.millis).append(" ms");
+        if (s.error != null) sb.append(" FAILED (").append(s.error).append(')');
+        sb.append('\n');
+    }
+}
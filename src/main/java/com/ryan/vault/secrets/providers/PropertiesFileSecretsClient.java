@@ -4,7 +4,23 @@ import com.ryan.vault.secrets.*;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.Properties;
 
 /**
@@ -14,41 +30,179 @@ import java.util.Properties;
  *    <path>.<key>
  * Example:
  *    integration/systemA.password=SuperSecret123
+ *
+ * The file is parsed into an immutable {@link Index} (path -> key -> trimmed value) and
+ * published through one volatile field: reads take no lock and allocate nothing, and a
+ * reload builds a new index off to the side and swaps it in.
+ *
+ * Reloading (secrets.file.reload=true, or implicitly once watch(...) is called) runs on one
+ * daemon thread: a WatchService on the file's directory, so editors that replace the file and
+ * Kubernetes volumes that swap a symlink are noticed, plus a modification time / size check
+ * every secrets.file.reloadCheckSeconds for file systems that send no events (NFS, some
+ * container mounts). A file that cannot be read (mid-rotation) keeps the current values.
  */
 
-public class PropertiesFileSecretsClient implements SecretsClient {
+public class PropertiesFileSecretsClient implements AsyncSecretsClient {
 
-    private final Properties props = new Properties();
+    private volatile Index index;   // replaced as a whole on reload
     private final String filePath;
+    private final long reloadCheckMillis;
+
+    // watch(...): registrations; the reload thread is started on the first watch (or at once with reload=true)
+    private final CopyOnWriteArrayList<Watch> watches = new CopyOnWriteArrayList<Watch>();
+    private Thread reloadThread;       // guarded by this
+    private WatchService watchService; // guarded by this; null when the directory cannot be watched
+    private volatile boolean closed;
 
     public PropertiesFileSecretsClient(Properties config) throws SecretException {
         this.filePath = Config.req(config, "secrets.file.path");
-        loadFromDisk();
+        this.reloadCheckMillis = Math.max(1L, Config.getLong(config, "secrets.file.reloadCheckSeconds", 10L)) * 1000L;
+        this.index = loadFromDisk();
+        if (Config.getBoolean(config, "secrets.file.reload", false)) {
+            synchronized (this) {
+                startReloading();
+            }
+        }
     }
 
     @Override
     public EnumSet<SecretCapability> capabilities() {
-        return EnumSet.of(SecretCapability.KV_READ);
+        return EnumSet.of(SecretCapability.KV_READ, SecretCapability.WATCH);
     }
 
     @Override
     public String getRequired(String path, String key) throws SecretException {
-        String propKey = path + "." + key;
-        String value = props.getProperty(propKey);
+        String value = index.value(path, key);
+        if (value == null) {
+            throw new SecretNotFoundException(
+                    "Missing property secret: " + path + "." + key + " in file: " + filePath
+            );
+        }
+        return value;
+    }
 
-        if (value == null || value.trim().isEmpty()) {
+    /**
+     * Returns every property named <path>.<key>, keyed by <key>.
+     */
+    @Override
+    public Map<String, String> getAll(String path) throws SecretException {
+        Map<String, String> result = index.byPath.get(path);
+        if (result == null) {
             throw new SecretNotFoundException(
-                    "Missing property secret: " + propKey + " in file: " + filePath
+                    "Missing property secrets with prefix: " + path + ". in file: " + filePath
             );
         }
-        return value.trim();
+        return result;
+    }
+
+    /** In-memory lookup: always completes on the caller's thread. */
+    @Override
+    public CompletableFuture<String> getRequiredAsync(String path, String key) {
+        return AsyncSecretsClient.completedNow(() -> getRequired(path, key));
     }
 
-    private void loadFromDisk() throws SecretException {
+    @Override
+    public CompletableFuture<Map<String, String>> getAllAsync(String path) {
+        return AsyncSecretsClient.completedNow(() -> getAll(path));
+    }
+
+    @Override
+    public SecretWatch watch(String path, String key, SecretChangeListener listener) throws SecretException {
+        final Watch watch = new Watch(path, key, listener, index.value(path, key));
+        synchronized (this) {
+            if (closed) throw new SecretException("Client is closed");
+            startReloading();
+            watches.add(watch);
+        }
+        return () -> watches.remove(watch);
+    }
+
+    /** Guarded by this. Starts the reload thread unless it runs already. */
+    private void startReloading() {
+        if (reloadThread != null) return;
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            try {
+                Paths.get(filePath).toAbsolutePath().getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                this.watchService = service;
+            } catch (IOException | RuntimeException e) {
+                service.close();
+            }
+        } catch (IOException e) {
+            // no WatchService: the modification time check alone picks up changes
+        }
+        reloadThread = new DaemonThreadFactory("secrets-file-reload").newThread(this::reloadLoop);
+        reloadThread.start();
+    }
+
+    private void reloadLoop() {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+        try {
+            while (!closed) {
+                WatchKey key;
+                if (service != null) {
+                    key = service.poll(reloadCheckMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    Thread.sleep(reloadCheckMillis);
+                    key = null;
+                }
+                if (key == null) {
+                    if (index.isStale(filePath)) reload();
+                    continue;
+                }
+                // Writers often produce several events in a row: settle, then reload once, and only
+                // if the file itself changed (the events cover every file in its directory).
+                do {
+                    key.pollEvents();
+                    if (!key.reset()) {
+                        service = null; // directory gone: fall back to the modification time check
+                        break;
+                    }
+                    key = service.poll(100L, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                if (index.isStale(filePath)) reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void reload() {
+        Index next;
+        try {
+            next = loadFromDisk();
+        } catch (SecretException e) {
+            return; // mid-rotation or unreadable: keep the current values
+        }
+        if (closed) return;
+        index = next;
+        for (Watch w : watches) {
+            String value = next.value(w.path, w.key);
+            if (Objects.equals(value, w.lastValue)) continue;
+            w.lastValue = value;
+            try {
+                w.listener.onChange(w.path, w.key, value);
+            } catch (RuntimeException ignored) {
+                // a failing listener must not stop the others
+            }
+        }
+    }
+
+    private Index loadFromDisk() throws SecretException {
+        Path file = Paths.get(filePath);
+        Properties loaded = new Properties();
         FileInputStream in = null;
         try {
+            // Stamp first: a write racing the parse then shows up as a change on the next check.
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            long size = Files.size(file);
             in = new FileInputStream(filePath);
-            props.load(in);
+            loaded.load(in);
+            return Index.of(loaded, modified, size);
         } catch (IOException e) {
             throw new SecretException("Failed to load secrets file: " + filePath, e);
         } finally {
@@ -58,8 +212,86 @@ public class PropertiesFileSecretsClient implements SecretsClient {
 
     @Override
     public void close() {
+        synchronized (this) {
+            closed = true;
+            if (watchService != null) {
+                try { watchService.close(); } catch (IOException ignored) {}
+            }
+            if (reloadThread != null) reloadThread.interrupt();
+        }
+        watches.clear();
         // If you want to reduce secret lifetime in memory:
-        props.clear();
+        index = Index.EMPTY;
+    }
+
+    /**
+     * One parsed version of the file: path -> (key -> trimmed value), blank values dropped.
+     * A property name with several dots is indexed under every split, since getRequired("a", "b.c")
+     * and getRequired("a.b", "c") both name "a.b.c".
+     */
+    private static final class Index {
+        static final Index EMPTY = new Index(Collections.<String, Map<String, String>>emptyMap(), -1L, -1L);
+
+        final Map<String, Map<String, String>> byPath;
+        final long modifiedMillis;
+        final long size;
+
+        private Index(Map<String, Map<String, String>> byPath, long modifiedMillis, long size) {
+            this.byPath = byPath;
+            this.modifiedMillis = modifiedMillis;
+            this.size = size;
+        }
+
+        static Index of(Properties props, long modifiedMillis, long size) {
+            Map<String, Map<String, String>> building = new HashMap<String, Map<String, String>>();
+            for (String name : props.stringPropertyNames()) {
+                String value = props.getProperty(name).trim();
+                if (value.isEmpty()) continue;
+                for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+                    if (dot == 0 || dot == name.length() - 1) continue;
+                    String path = name.substring(0, dot);
+                    Map<String, String> keys = building.get(path);
+                    if (keys == null) {
+                        keys = new LinkedHashMap<String, String>();
+                        building.put(path, keys);
+                    }
+                    keys.put(name.substring(dot + 1), value);
+                }
+            }
+            Map<String, Map<String, String>> byPath = new HashMap<String, Map<String, String>>(building.size() * 2);
+            for (Map.Entry<String, Map<String, String>> e : building.entrySet()) {
+                byPath.put(e.getKey(), Collections.unmodifiableMap(e.getValue()));
+            }
+            return new Index(byPath, modifiedMillis, size);
+        }
+
+        String value(String path, String key) {
+            Map<String, String> keys = byPath.get(path);
+            return keys == null ? null : keys.get(key);
+        }
+
+        /** True when the file's modification time or size differs from this version (or cannot be read). */
+        boolean isStale(String filePath) {
+            try {
+                Path file = Paths.get(filePath);
+                return Files.getLastModifiedTime(file).toMillis() != modifiedMillis || Files.size(file) != size;
+            } catch (IOException e) {
+                return false; // missing for now (rotation): keep the current values
+            }
+        }
     }
 
+    private static final class Watch {
+        final String path;
+        final String key;
+        final SecretChangeListener listener;
+        volatile String lastValue;
+
+        Watch(String path, String key, SecretChangeListener listener, String lastValue) {
+            this.path = path;
+            this.key = key;
+            this.listener = listener;
+            this.lastValue = lastValue;
+        }
+    }
 }
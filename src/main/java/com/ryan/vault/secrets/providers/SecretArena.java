@@ -0,0 +1,112 @@
+package com.ryan.vault.secrets.providers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap storage for cached secrets: fixed 256-byte blocks carved out of direct ByteBuffer
+ * chunks (1 MB each, allocated on demand), never more than maxBytes in total.
+ *
+ * A value of any size takes as many blocks as it needs, in any order, so every free block fits
+ * every request and the arena never fragments. Blocks are zeroed when they are freed, and
+ * {@link #release()} zeroes and drops every chunk.
+ *
+ * Data is stored as UTF-16 chars, so it can be read back into a char[] without a String.
+ * Not thread-safe: the owning cache serializes access.
+ */
+final class SecretArena {
+
+    static final int BLOCK_BYTES = 256;
+    private static final int BLOCKS_PER_CHUNK = (1 << 20) / BLOCK_BYTES;
+
+    private final int maxBlocks;
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private int[] free = new int[0]; // stack of free block ids
+    private int freeCount;
+    private int blocksCreated;
+
+    SecretArena(long maxBytes) {
+        this.maxBlocks = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, maxBytes / BLOCK_BYTES));
+    }
+
+    /** Blocks for chars UTF-16 chars, or null when the arena cannot hold them without evicting. */
+    int[] allocate(int chars) {
+        int needed = Math.max(1, (chars * 2 + BLOCK_BYTES - 1) / BLOCK_BYTES);
+        if (needed > freeCount + (maxBlocks - blocksCreated)) return null;
+        while (freeCount < needed) grow();
+        int[] blocks = new int[needed];
+        for (int i = 0; i < needed; i++) blocks[i] = free[--freeCount];
+        return blocks;
+    }
+
+    /** Zeroes the blocks and gives them back. */
+    void free(int[] blocks) {
+        for (int block : blocks) {
+            ByteBuffer chunk = chunks.get(block / BLOCKS_PER_CHUNK);
+            int start = (block % BLOCKS_PER_CHUNK) * BLOCK_BYTES;
+            for (int i = 0; i < BLOCK_BYTES; i += 8) chunk.putLong(start + i, 0L);
+            free[freeCount++] = block;
+        }
+    }
+
+    void putChar(int[] blocks, int index, char c) {
+        int offset = index * 2;
+        int block = blocks[offset / BLOCK_BYTES];
+        chunks.get(block / BLOCKS_PER_CHUNK).putChar((block % BLOCKS_PER_CHUNK) * BLOCK_BYTES + offset % BLOCK_BYTES, c);
+    }
+
+    char getChar(int[] blocks, int index) {
+        int offset = index * 2;
+        int block = blocks[offset / BLOCK_BYTES];
+        return chunks.get(block / BLOCKS_PER_CHUNK).getChar((block % BLOCKS_PER_CHUNK) * BLOCK_BYTES + offset % BLOCK_BYTES);
+    }
+
+    /** Two chars, high half first. */
+    void putInt(int[] blocks, int index, int value) {
+        putChar(blocks, index, (char) (value >>> 16));
+        putChar(blocks, index + 1, (char) value);
+    }
+
+    int getInt(int[] blocks, int index) {
+        return (getChar(blocks, index) << 16) | getChar(blocks, index + 1);
+    }
+
+    /** Zeroes every chunk and drops them; the arena starts empty again. Every block must have been freed or abandoned. */
+    void release() {
+        for (ByteBuffer chunk : chunks) {
+            for (int i = 0; i + 8 <= chunk.capacity(); i += 8) chunk.putLong(i, 0L);
+        }
+        chunks.clear();
+        free = new int[0];
+        freeCount = 0;
+        blocksCreated = 0;
+    }
+
+    /** Bytes of the chunks allocated so far. */
+    long reservedBytes() {
+        return (long) blocksCreated * BLOCK_BYTES;
+    }
+
+    /** Bytes of the blocks in use. */
+    long usedBytes() {
+        return (long) (blocksCreated - freeCount) * BLOCK_BYTES;
+    }
+
+    long maxBytes() {
+        return (long) maxBlocks * BLOCK_BYTES;
+    }
+
+    private void grow() {
+        int blocks = Math.min(BLOCKS_PER_CHUNK, maxBlocks - blocksCreated);
+        chunks.add(ByteBuffer.allocateDirect(blocks * BLOCK_BYTES));
+        int first = (chunks.size() - 1) * BLOCKS_PER_CHUNK;
+        if (free.length < blocksCreated + blocks) {
+            int[] bigger = new int[blocksCreated + blocks];
+            System.arraycopy(free, 0, bigger, 0, freeCount);
+            free = bigger;
+        }
+        for (int i = blocks - 1; i >= 0; i--) free[freeCount++] = first + i;
+        blocksCreated += blocks;
+    }
+}
@@ -0,0 +1,43 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.SecretsInstrumentation;
+
+import java.util.Map;
+
+/**
+ * In-memory cache used by the providers, with per-entry expiration and a max entry count.
+ *
+ * Implementations (property secrets.cache.impl):
+ *  - lru        → {@link LruExpiringCache}: exact LRU, one global lock (default)
+ *  - concurrent → {@link ConcurrentExpiringCache}: lock-free reads, approximate LRU, batched expiry cleanup
+ *  - offheap    → {@link OffHeapDocumentCache}: Vault documents only, values off-heap, bounded by bytes
+ *                 (created by the Vault client itself, not here)
+ */
+interface SecretCache<V> {
+
+    /** Returns the value, or null when missing or expired. */
+    V get(String key);
+
+    /** Stores (or replaces) a value that stays valid until expiresAt (epoch millis). */
+    void put(String key, V value, long expiresAt);
+
+    /** Drops one entry, if present. */
+    void remove(String key);
+
+    /** Copy of the entries that have not expired yet (used to write snapshots). */
+    Map<String, V> entries();
+
+    /** Removes everything, including secrets. */
+    void clear();
+
+    /** evictions is incremented for every entry dropped because the cache was full (not for expiry). */
+    static <V> SecretCache<V> create(String impl, int maxEntries, SecretsInstrumentation.Counter evictions) {
+        if ("lru".equals(impl)) {
+            return new LruExpiringCache<V>(maxEntries, evictions);
+        }
+        if ("concurrent".equals(impl)) {
+            return new ConcurrentExpiringCache<V>(maxEntries, evictions);
+        }
+        throw new IllegalArgumentException("Unknown secrets.cache.impl: " + impl);
+    }
+}
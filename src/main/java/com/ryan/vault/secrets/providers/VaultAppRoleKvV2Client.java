@@ -1,175 +1,1185 @@
 package com.ryan.vault.secrets.providers;
 
 import com.ryan.vault.secrets.*;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ryan.vault.secrets.*;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Vault/OpenBao KV v2 reader that authenticates via AppRole (role_id + secret_id).
  *
  * Auth flow:
  *  1) POST /v1/auth/approle/login with JSON {role_id, secret_id}
- *  2) Extract token from auth.client_token
+ *  2) Extract token from auth.client_token, plus auth.lease_duration / auth.renewable
  *  3) GET KV v2 secret using X-Vault-Token header
+ *  4) In the background, renew the token via /v1/auth/token/renew-self before it expires,
+ *     or log in again when it cannot be renewed any further
  *
- * Includes an in-memory cache for secret values.
+ * Includes an in-memory cache of secret documents keyed by path, so reading several
+ * keys under the same path costs a single KV v2 read.
+ *
+ * With secrets.snapshot.path set, the cache is also kept in an encrypted file (see
+ * {@link CacheSnapshot}). After a restart, paths from that file are served as stale-if-error
+ * data until they have been read from Vault once, so the app can start during a Vault outage.
  */
-public class VaultAppRoleKvV2Client implements SecretsClient {
+public class VaultAppRoleKvV2Client implements AsyncSecretsClient {
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
-    private final String addr;
+    private final VaultEndpoints endpoints; // vault.addr list: health probes, read routing, failover
+    private final VaultResilience resilience; // breaker, concurrency limit, retry budget, timeouts of KV reads
     private final String mount;
     private final String approleLoginPath;
     private final String roleId;
     private final String secretId;
-    private final int timeoutMs;
+    private final HttpTransport transport;
 
     // Cache configuration
     private final long cacheTtlMillis;
-    private final LruExpiringCache cache;
+    private final long refreshAheadMillis;        // age after which a hit triggers a background refresh
+    private final long staleWhileRevalidateMillis; // how long past expiry a hit may be served while refreshing
+    private final long staleIfErrorMillis;         // how long past expiry a value may be served while Vault fails
+    private final SecretCache<CachedDocument> cache;
+    private final OffHeapDocumentCache offHeapCache; // same object as cache with secrets.cache.impl=offheap, else null
+
+    // Revalidation: after expiry, compare the cached KV v2 version with metadata current_version
+    // and only download the document again when it changed
+    private final boolean revalidate;
+    private final LongAdder revalidatedReads = new LongAdder();
+
+    // Negative cache: paths Vault answered 404 for, with their own (short) TTL. 0 = off.
+    private final long negativeTtlMillis;
+    private final SecretCache<String> notFound; // path -> message of the SecretNotFoundException
+
+    // Concurrent cache misses for the same path wait on one Vault read
+    private final SingleFlight<CachedDocument> inFlight = new SingleFlight<CachedDocument>();
+
+    // Background work: refresh-ahead and stale-while-revalidate refreshes, watch polls, snapshot writes
+    private final ScheduledExecutorService scheduler;
+    private final boolean backgroundRefresh;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    // Batch reads: distinct paths are fetched in parallel on this bounded pool
+    private final ThreadPoolExecutor batchExecutor;
+
+    // Async API: cache misses are read on this bounded pool, never on the caller's thread
+    private final ThreadPoolExecutor asyncExecutor;
+
+    private volatile CompletableFuture<PreloadReport> lastPreload;
+
+    // watch(...): one poll per watched path on the background scheduler
+    private final ChangePoller changePoller;
+
+    // Revalidation and watch polls read metadata/; false once the policy was seen to refuse it
+    private volatile boolean metadataReadable = true;
 
-    private volatile String clientToken; // cached token
+    // Encrypted on-disk snapshot: documents loaded at startup, used until each path is refreshed
+    private final CacheSnapshot snapshot;
+    private final ConcurrentHashMap<String, CachedDocument> snapshotFallback = new ConcurrentHashMap<String, CachedDocument>();
+    private volatile boolean snapshotDirty;
+
+    // Metrics (no-op unless secrets.metrics=true or an instrumentation is passed in)
+    private final SecretsInstrumentation.Counter cacheHits;
+    private final SecretsInstrumentation.Counter cacheMisses;
+    private final SecretsInstrumentation.Counter cacheStale;
+    private final SecretsInstrumentation.Counter negativeHits;
+    private final SecretsInstrumentation.Counter retries403;
+    private final SecretsInstrumentation.Timer loginTimer;
+    private final SecretsInstrumentation.Timer renewTimer;
+    private final SecretsInstrumentation.Timer kvReadTimer;
+    private final SecretsInstrumentation.Timer metadataReadTimer;
+    private final SecretsInstrumentation.Counter revalidatedCounter;
+
+    // Token lease tracking
+    private final boolean tokenRenewEnabled;
+    private final double tokenRenewRatio;
+    private volatile TokenLease lease;     // cached token and its lifetime
+    private long loginLeaseMillis;         // TTL granted by the last login (guarded by this)
+    private ScheduledFuture<?> renewTask;  // guarded by this
+    // Renewal has its own thread: slow refreshes or polls queued on the scheduler must not
+    // delay it past the lease expiry. null when vault.token.renew=false.
+    private final ScheduledExecutorService renewer;
 
     public VaultAppRoleKvV2Client(Properties p) {
-        this.addr = UrlUtil.trimTrailingSlash(Config.req(p, "vault.addr"));
+        this(p, SecretsInstrumentation.NOOP);
+    }
+
+    public VaultAppRoleKvV2Client(Properties p, SecretsInstrumentation instrumentation) {
+        Config.req(p, "vault.addr");
         this.mount = Config.get(p, "vault.mount", "secret");
         this.approleLoginPath = Config.get(p, "vault.approle.loginPath", "/v1/auth/approle/login");
         this.roleId = Config.req(p, "vault.approle.role_id");
         this.secretId = Config.req(p, "vault.approle.secret_id");
-        this.timeoutMs = Config.getInt(p, "vault.timeoutMs", 5000);
+        this.transport = HttpTransport.create(p);
 
-        // Cache: default 300 seconds, max 200 entries
+        // Cache: default 300 seconds, max 200 entries, LinkedHashMap-based LRU
         long ttlSeconds = Config.getLong(p, "secrets.cache.ttlSeconds", 300L);
         int maxEntries = Config.getInt(p, "secrets.cache.maxEntries", 200);
+        String cacheImpl = Config.get(p, "secrets.cache.impl", "lru").toLowerCase();
         this.cacheTtlMillis = Math.max(0L, ttlSeconds) * 1000L;
-        this.cache = new LruExpiringCache(maxEntries);
+        String provider = Config.get(p, "secrets.provider", "vault").toLowerCase();
+        if ("offheap".equals(cacheImpl)) {
+            // Values off-heap, bounded by bytes instead of secrets.cache.maxEntries
+            this.offHeapCache = new OffHeapDocumentCache(Config.getLong(p, "secrets.cache.maxBytes", 4L * 1024 * 1024),
+                    instrumentation.counter(SecretsInstrumentation.CACHE_EVICTION, provider, mount));
+            this.cache = offHeapCache;
+        } else {
+            this.offHeapCache = null;
+            this.cache = SecretCache.create(cacheImpl, maxEntries,
+                    instrumentation.counter(SecretsInstrumentation.CACHE_EVICTION, provider, mount));
+        }
+        this.negativeTtlMillis = Math.max(0L, Config.getLong(p, "secrets.cache.negativeTtlSeconds", 0L)) * 1000L;
+        this.notFound = SecretCache.create(offHeapCache != null ? "lru" : cacheImpl,
+                Config.getInt(p, "secrets.cache.negativeMaxEntries", 1000),
+                instrumentation.counter(SecretsInstrumentation.CACHE_EVICTION, provider, mount));
+        this.negativeHits = instrumentation.counter(SecretsInstrumentation.CACHE_NEGATIVE_HIT, provider, mount);
+        this.cacheHits = instrumentation.counter(SecretsInstrumentation.CACHE_HIT, provider, mount);
+        this.cacheMisses = instrumentation.counter(SecretsInstrumentation.CACHE_MISS, provider, mount);
+        this.cacheStale = instrumentation.counter(SecretsInstrumentation.CACHE_STALE, provider, mount);
+        this.retries403 = instrumentation.counter(SecretsInstrumentation.KV_RETRY_403, provider, mount);
+        this.loginTimer = instrumentation.timer(SecretsInstrumentation.LOGIN, provider, mount);
+        this.renewTimer = instrumentation.timer(SecretsInstrumentation.TOKEN_RENEW, provider, mount);
+        this.kvReadTimer = instrumentation.timer(SecretsInstrumentation.KV_READ, provider, mount);
+        this.metadataReadTimer = instrumentation.timer(SecretsInstrumentation.KV_METADATA_READ, provider, mount);
+        this.revalidatedCounter = instrumentation.counter(SecretsInstrumentation.KV_REVALIDATED, provider, mount);
+        this.revalidate = Config.getBoolean(p, "secrets.cache.revalidate", false);
+
+        // Refresh-ahead: refresh in the background once an entry reaches this fraction of its TTL (0 = off)
+        double refreshAheadRatio = Config.getDouble(p, "secrets.cache.refreshAheadRatio", 0d);
+        if (refreshAheadRatio < 0d || refreshAheadRatio >= 1d) {
+            throw new IllegalArgumentException("secrets.cache.refreshAheadRatio must be in [0, 1): " + refreshAheadRatio);
+        }
+        this.refreshAheadMillis = refreshAheadRatio > 0d ? (long) (cacheTtlMillis * refreshAheadRatio) : cacheTtlMillis;
+        this.staleWhileRevalidateMillis = Math.max(0L, Config.getLong(p, "secrets.cache.staleWhileRevalidateSeconds", 0L)) * 1000L;
+        this.staleIfErrorMillis = Math.max(0L, Config.getLong(p, "secrets.cache.staleIfErrorSeconds", 0L)) * 1000L;
+
+        this.backgroundRefresh = cacheTtlMillis > 0L && (refreshAheadMillis < cacheTtlMillis || staleWhileRevalidateMillis > 0L);
+
+        // Token: renew through renew-self once this fraction of the lease has elapsed
+        this.tokenRenewEnabled = Config.getBoolean(p, "vault.token.renew", true);
+        this.tokenRenewRatio = Config.getDouble(p, "vault.token.renewRatio", 0.67d);
+        if (tokenRenewRatio <= 0d || tokenRenewRatio >= 1d) {
+            throw new IllegalArgumentException("vault.token.renewRatio must be in (0, 1): " + tokenRenewRatio);
+        }
+        this.renewer = tokenRenewEnabled
+                ? Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("vault-token-renew"))
+                : null;
+
+        int batchParallelism = Math.max(1, Config.getInt(p, "secrets.batch.parallelism", 8));
+        this.batchExecutor = new ThreadPoolExecutor(batchParallelism, batchParallelism, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("vault-secrets-batch"));
+        this.batchExecutor.allowCoreThreadTimeOut(true);
+
+        int asyncThreads = Math.max(1, Config.getInt(p, "vault.async.threads", 4));
+        this.asyncExecutor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, Config.getInt(p, "vault.async.queueSize", 1024))),
+                new DaemonThreadFactory("vault-secrets-async"));
+        this.asyncExecutor.allowCoreThreadTimeOut(true);
+
+        this.scheduler = Executors.newScheduledThreadPool(
+                Math.max(1, Config.getInt(p, "secrets.cache.refreshThreads", 1)),
+                new DaemonThreadFactory("vault-secrets-background"));
+
+        this.changePoller = new ChangePoller(scheduler, new ChangePoller.Source() {
+            @Override public long version(String path) throws Exception { return watchedVersion(path); }
+            @Override public CachedDocument read(String path) throws Exception {
+                return inFlight.execute(path, () -> downloadDocument(path, ensureToken()));
+            }
+        },
+                Math.max(1L, Config.getLong(p, "secrets.watch.minIntervalSeconds", 5L)) * 1000L,
+                Math.max(1L, Config.getLong(p, "secrets.watch.maxIntervalSeconds", 60L)) * 1000L,
+                Config.getDouble(p, "secrets.watch.jitter", 0.2d));
+
+        this.endpoints = new VaultEndpoints(p, transport,
+                instrumentation.counter(SecretsInstrumentation.ENDPOINT_FAILOVER, provider, mount));
+        this.resilience = new VaultResilience(p,
+                instrumentation.counter(SecretsInstrumentation.KV_REJECTED, provider, mount),
+                instrumentation.counter(SecretsInstrumentation.KV_RETRY_DENIED, provider, mount));
+
+        this.snapshot = CacheSnapshot.create(p, roleId, secretId);
+        if (snapshot != null) {
+            try {
+                snapshotFallback.putAll(snapshot.load());
+            } catch (SecretException e) {
+                // Unreadable snapshot (other key, corrupt file): start without it, it is rewritten later.
+            }
+            long intervalSeconds = Math.max(1L, Config.getLong(p, "secrets.snapshot.intervalSeconds", 60L));
+            scheduler.scheduleWithFixedDelay(this::writeSnapshotIfDirty, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
     }
 
     @Override
     public EnumSet<SecretCapability> capabilities() {
-        return EnumSet.of(SecretCapability.KV_READ);
+        return EnumSet.of(SecretCapability.KV_READ, SecretCapability.WATCH);
     }
 
+    /** With secrets.cache.impl=offheap, a fresh cached value is decoded alone, not with its whole document. */
     @Override
     public String getRequired(String path, String key) throws SecretException {
+        String value = offHeapValue(path, key);
+        if (value != null) return value;
+        return valueOf(readDocument(path), path, key);
+    }
+
+    /** With secrets.cache.impl=offheap, a fresh cached value is copied straight from off-heap memory. */
+    @Override
+    public char[] getRequiredChars(String path, String key) throws SecretException {
+        if (offHeapCache != null && cacheTtlMillis > 0L) {
+            char[] value = offHeapCache.valueChars(path, key, System.currentTimeMillis());
+            if (value != null) {
+                cacheHits.increment();
+                return value;
+            }
+        }
+        return valueOf(readDocument(path), path, key).toCharArray();
+    }
+
+    @Override
+    public Map<String, String> getAll(String path) throws SecretException {
+        return readDocument(path);
+    }
+
+    /** Off-heap single-key hit, or null: not cached, due for a refresh, or not off-heap at all. */
+    private String offHeapValue(String path, String key) {
+        if (offHeapCache == null || cacheTtlMillis <= 0L) return null;
+        String value = offHeapCache.value(path, key, System.currentTimeMillis());
+        if (value != null) cacheHits.increment();
+        return value;
+    }
+
+    /**
+     * Batch read: groups the refs by path, reads each distinct path once (cache first, then
+     * Vault in parallel on a pool of secrets.batch.parallelism threads) and fills the cache.
+     */
+    @Override
+    public Map<SecretRef, SecretResult> getMany(Collection<SecretRef> refs) {
+        Map<String, List<SecretRef>> byPath = new LinkedHashMap<String, List<SecretRef>>();
+        for (SecretRef ref : refs) {
+            List<SecretRef> forPath = byPath.get(ref.path());
+            if (forPath == null) {
+                forPath = new ArrayList<SecretRef>();
+                byPath.put(ref.path(), forPath);
+            }
+            forPath.add(ref);
+        }
+
+        // Submit all but the last path; the calling thread reads that one itself.
+        Map<String, Future<Map<String, String>>> reads = new LinkedHashMap<String, Future<Map<String, String>>>();
+        String last = null;
+        for (String path : byPath.keySet()) {
+            if (last != null) reads.put(last, submitRead(last));
+            last = path;
+        }
+        if (last != null) reads.put(last, readInline(last));
+
+        Map<SecretRef, SecretResult> results = new LinkedHashMap<SecretRef, SecretResult>();
+        for (SecretRef ref : refs) results.put(ref, null); // keep request order
+        for (Map.Entry<String, Future<Map<String, String>>> read : reads.entrySet()) {
+            List<SecretRef> forPath = byPath.get(read.getKey());
+            try {
+                Map<String, String> document = awaitRead(read.getValue());
+                for (SecretRef ref : forPath) {
+                    String value = document.get(ref.key());
+                    results.put(ref, value != null
+                            ? SecretResult.success(value)
+                            : SecretResult.failure(new SecretNotFoundException("Key not found: " + ref.path() + "." + ref.key())));
+                }
+            } catch (SecretException e) {
+                for (SecretRef ref : forPath) results.put(ref, SecretResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    private Future<Map<String, String>> submitRead(final String path) {
+        try {
+            return batchExecutor.submit(() -> readDocument(path));
+        } catch (RejectedExecutionException e) {
+            return readInline(path); // client is closing
+        }
+    }
+
+    private Future<Map<String, String>> readInline(String path) {
+        CompletableFuture<Map<String, String>> read = new CompletableFuture<Map<String, String>>();
+        try {
+            read.complete(readDocument(path));
+        } catch (SecretException e) {
+            read.completeExceptionally(e);
+        }
+        return read;
+    }
+
+    private static Map<String, String> awaitRead(Future<Map<String, String>> read) throws SecretException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecretException("Interrupted while reading secrets", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SecretException) throw (SecretException) cause;
+            throw new SecretException("Failed to read secret from Vault", cause);
+        }
+    }
+
+    /**
+     * Warms the cache: logs in, expands prefixes (entries ending with '/') through KV v2 LIST
+     * on metadata, then reads every path in parallel on the batch pool.
+     * Runs on its own thread; the returned future completes with per-step timings.
+     * A failing entry is reported and skipped, it does not stop the warm-up.
+     */
+    public CompletableFuture<PreloadReport> preload(final Collection<String> entries) {
+        final CompletableFuture<PreloadReport> done = new CompletableFuture<PreloadReport>();
+        lastPreload = done;
+        new DaemonThreadFactory("vault-secrets-preload").newThread(() -> {
+            try {
+                done.complete(runPreload(entries));
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            }
+        }).start();
+        return done;
+    }
+
+    /** The most recent warm-up started with {@link #preload(Collection)}, or null. */
+    public CompletableFuture<PreloadReport> lastPreload() {
+        return lastPreload;
+    }
+
+    private PreloadReport runPreload(Collection<String> entries) {
+        long start = System.nanoTime();
+        PreloadReport report = new PreloadReport();
+
+        // 1) Login once up front instead of inside the first read
+        long t0 = System.nanoTime();
+        try {
+            ensureToken();
+            report.login(new PreloadReport.Step("approle", millisSince(t0), null));
+        } catch (Exception e) {
+            report.login(new PreloadReport.Step("approle", millisSince(t0), String.valueOf(e.getMessage())));
+            report.totalMillis(millisSince(start));
+            return report;
+        }
+
+        // 2) Expand prefixes in parallel
+        Set<String> paths = new LinkedHashSet<String>();
+        Map<String, Future<List<String>>> listings = new LinkedHashMap<String, Future<List<String>>>();
+        Map<String, Long> listingStarts = new HashMap<String, Long>();
+        for (final String entry : entries) {
+            if (entry.endsWith("/")) {
+                listingStarts.put(entry, System.nanoTime());
+                listings.put(entry, batchExecutor.submit(() -> listRecursive(entry)));
+            } else {
+                paths.add(entry);
+            }
+        }
+        for (Map.Entry<String, Future<List<String>>> listing : listings.entrySet()) {
+            String prefix = listing.getKey();
+            try {
+                List<String> found = listing.getValue().get();
+                paths.addAll(found);
+                report.listing(new PreloadReport.Step(prefix + " (" + found.size() + " paths)", millisSince(listingStarts.get(prefix)), null));
+            } catch (Exception e) {
+                report.listing(new PreloadReport.Step(prefix, millisSince(listingStarts.get(prefix)), describe(e)));
+            }
+        }
+
+        // 3) Read every path in parallel; each task measures its own read
+        Map<String, Future<PreloadReport.Step>> reads = new LinkedHashMap<String, Future<PreloadReport.Step>>();
+        for (final String path : paths) {
+            reads.put(path, batchExecutor.submit(() -> {
+                long readStart = System.nanoTime();
+                try {
+                    readDocument(path);
+                    return new PreloadReport.Step(path, millisSince(readStart), null);
+                } catch (SecretException e) {
+                    return new PreloadReport.Step(path, millisSince(readStart), String.valueOf(e.getMessage()));
+                }
+            }));
+        }
+        for (Map.Entry<String, Future<PreloadReport.Step>> read : reads.entrySet()) {
+            try {
+                report.path(read.getValue().get());
+            } catch (Exception e) {
+                report.path(new PreloadReport.Step(read.getKey(), 0L, describe(e)));
+            }
+        }
+
+        report.totalMillis(millisSince(start));
+        return report;
+    }
+
+    /** All secret paths below a folder (KV v2 folders end with '/'). */
+    private List<String> listRecursive(String prefix) throws Exception {
+        List<String> paths = new ArrayList<String>();
+        for (String child : listKv2Keys(prefix, ensureToken())) {
+            if (child.endsWith("/")) {
+                paths.addAll(listRecursive(prefix + child));
+            } else {
+                paths.add(prefix + child);
+            }
+        }
+        return paths;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static String describe(Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        return String.valueOf(cause.getMessage());
+    }
+
+    /**
+     * Returns the whole data.data document of a path.
+     * The cache is keyed by path, so one KV v2 read serves every key stored under it.
+     */
+    private Map<String, String> readDocument(final String path) throws SecretException {
         // 1) Cache check
+        CachedDocument cached = cacheTtlMillis > 0L ? cache.get(path) : null;
+        Map<String, String> hit = serveFromCache(path, cached);
+        if (hit != null) return hit;
+        SecretNotFoundException missing = knownMissing(path);
+        if (missing != null) throw missing;
+
+        // 2) Read from Vault. Concurrent misses for the same path share one request.
+        try {
+            return inFlight.execute(path, () -> fetchDocument(path)).values;
+        } catch (Exception e) {
+            return staleOrThrow(path, cached, e);
+        }
+    }
+
+    /**
+     * Returns the cached values if they may be served without going to Vault first
+     * (fresh, or stale within the stale-while-revalidate window), queueing a background
+     * refresh when one is due. Returns null when the caller has to read from Vault.
+     */
+    private Map<String, String> serveFromCache(String path, CachedDocument cached) {
+        if (cached == null) {
+            cacheMisses.increment();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now < cached.expiresAt) {
+            cacheHits.increment();
+            if (now >= cached.refreshAt) refreshInBackground(path);
+            return cached.values;
+        }
+        if (now < cached.staleWhileRevalidateUntil) {
+            cacheHits.increment();
+            cacheStale.increment();
+            refreshInBackground(path);
+            return cached.values;
+        }
+        cacheMisses.increment();
+        return null;
+    }
+
+    /** Negative cache check: returns the error to throw when Vault recently answered 404 for the path. */
+    private SecretNotFoundException knownMissing(String path) {
+        if (negativeTtlMillis <= 0L) return null;
+        String message = notFound.get(path);
+        if (message == null) return null;
+        negativeHits.increment();
+        return new SecretNotFoundException(message);
+    }
+
+    /**
+     * Stale-if-error: keep serving the last good value while Vault is failing, falling back to
+     * the on-disk snapshot for paths not read since startup. 404s are never masked, and only
+     * outages are (see {@link #isOutage}): a denied login or read is rethrown.
+     */
+    private Map<String, String> staleOrThrow(String path, CachedDocument cached, Throwable error) throws SecretException {
+        if (error instanceof SecretNotFoundException) {
+            if (snapshotFallback.remove(path) != null) snapshotDirty = true; // deleted in Vault
+        } else if (isOutage(error)) {
+            if (cached != null && System.currentTimeMillis() < cached.staleIfErrorUntil) {
+                cacheStale.increment();
+                return cached.values;
+            }
+            CachedDocument saved = snapshotFallback.get(path);
+            if (saved != null && System.currentTimeMillis() < saved.staleIfErrorUntil) {
+                cacheStale.increment();
+                return saved.values;
+            }
+        }
+        if (error instanceof SecretException) throw (SecretException) error;
+        throw new SecretException("Failed to read secret from Vault", error);
+    }
+
+    /**
+     * Vault unreachable or overloaded ({@link SecretException#isOutage()}), or the async pool is
+     * saturated. A 400, 401 or 403 means the app's request or access is wrong, and stale data
+     * must not hide that.
+     */
+    private static boolean isOutage(Throwable error) {
+        if (error instanceof IOException || error instanceof RejectedExecutionException) return true;
+        if (!(error instanceof SecretException)) return false;
+        return ((SecretException) error).isOutage() || error.getCause() instanceof RejectedExecutionException;
+    }
+
+    @Override
+    public CompletableFuture<String> getRequiredAsync(final String path, final String key) {
+        String value = offHeapValue(path, key);
+        if (value != null) return CompletableFuture.completedFuture(value);
+        CachedDocument cached = cacheTtlMillis > 0L ? cache.get(path) : null;
+        Map<String, String> hit = serveFromCache(path, cached);
+        if (hit != null) {
+            // Cache hit: complete on the caller's thread, no thread hop.
+            return AsyncSecretsClient.completedNow(() -> valueOf(hit, path, key));
+        }
+        SecretNotFoundException missing = knownMissing(path);
+        if (missing != null) return failedNow(missing);
+        final CompletableFuture<String> result = new CompletableFuture<String>();
+        readDocumentAsync(path, cached).whenComplete((document, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                try {
+                    result.complete(valueOf(document, path, key));
+                } catch (SecretException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getAllAsync(String path) {
+        CachedDocument cached = cacheTtlMillis > 0L ? cache.get(path) : null;
+        Map<String, String> hit = serveFromCache(path, cached);
+        if (hit != null) return CompletableFuture.completedFuture(hit);
+        SecretNotFoundException missing = knownMissing(path);
+        if (missing != null) return failedNow(missing);
+        return readDocumentAsync(path, cached);
+    }
+
+    /** Cache miss path of the async API: the Vault read runs on the async pool, never on the caller. */
+    private CompletableFuture<Map<String, String>> readDocumentAsync(final String path, final CachedDocument cached) {
+        final CompletableFuture<Map<String, String>> result = new CompletableFuture<Map<String, String>>();
+        inFlight.executeAsync(path, () -> fetchDocument(path), asyncExecutor).whenComplete((fetched, error) -> {
+            if (error == null) {
+                result.complete(fetched.values);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException) {
+                cause = new SecretException("Vault async pool is saturated (vault.async.threads / vault.async.queueSize)", cause);
+            }
+            try {
+                result.complete(staleOrThrow(path, cached, cause));
+            } catch (SecretException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failedNow(SecretException error) {
+        CompletableFuture<T> failed = new CompletableFuture<T>();
+        failed.completeExceptionally(error);
+        return failed;
+    }
+
+    private static String valueOf(Map<String, String> document, String path, String key) throws SecretNotFoundException {
+        String value = document.get(key);
+        if (value == null) {
+            throw new SecretNotFoundException("Key not found: " + path + "." + key);
+        }
+        return value;
+    }
+
+    /** Runs on the single-flight leader only. */
+    private CachedDocument fetchDocument(String path) throws Exception {
+        // A previous leader may have refreshed the cache between our miss and this call.
+        CachedDocument cached = null;
         if (cacheTtlMillis > 0L) {
-            String cached = cache.get(cacheKey(path, key));
-            if (cached != null) return cached;
+            cached = cache.get(path);
+            if (cached != null && System.currentTimeMillis() < cached.refreshAt) return cached;
+        }
+
+        String token = ensureToken();
+
+        // Same version as the cached copy? Then a metadata read is all it takes.
+        if (revalidate && metadataReadable && cached != null && cached.version >= 0L) {
+            try {
+                CachedDocument revalidated = revalidate(path, cached, token);
+                if (revalidated != null) return revalidated;
+            } catch (SecretException refused) {
+                // 403: an expired token, or a policy that grants data/ but not metadata/. If the full
+                // read works with the same token, it is the policy: stop paying for metadata reads.
+                CachedDocument downloaded = downloadDocument(path, token);
+                TokenLease current = lease;
+                if (current != null && current.token.equals(token)) metadataReadable = false;
+                return downloaded;
+            }
         }
 
-        // 2) Read from Vault
-        String value;
+        return downloadDocument(path, token);
+    }
+
+    /** Full KV v2 read (one retry on 403), then the cache; a 404 goes to the negative cache. */
+    private CachedDocument downloadDocument(String path, String token) throws Exception {
+        Kv2Document document;
         try {
-            ensureToken();
             try {
-                value = readKv2Secret(path, key, clientToken);
+                document = readKv2Document(path, token);
             } catch (SecretException se) {
-                // One retry if token became invalid/expired.
-                if (se.getMessage() != null && se.getMessage().contains("HTTP 403")) {
-                    clientToken = null;
-                    ensureToken();
-                    value = readKv2Secret(path, key, clientToken);
-                } else {
-                    throw se;
-                }
+                // One retry if the token was revoked or expired before the renewal caught it,
+                // as long as the retry budget allows it (the next read logs in again anyway).
+                if (se.getStatusCode() != 403) throw se;
+                invalidateToken(token);
+                if (!resilience.tryRetry()) throw se;
+                retries403.increment();
+                document = readKv2Document(path, ensureToken());
+            }
+        } catch (SecretNotFoundException notFoundError) {
+            if (negativeTtlMillis > 0L) {
+                notFound.put(path, notFoundError.getMessage(), System.currentTimeMillis() + negativeTtlMillis);
             }
+            throw notFoundError;
+        }
+
+        return store(path, document.values, document.version);
+    }
+
+    /**
+     * Checks metadata current_version against the cached copy.
+     * Returns the cached values with fresh timestamps when the version did not move, null when
+     * the document has to be downloaded, and the cached copy as it is when Vault fails.
+     * A 403 is thrown: the caller tells an expired token from a policy without metadata access.
+     */
+    private CachedDocument revalidate(String path, CachedDocument cached, String token) throws SecretException {
+        long currentVersion;
+        try {
+            currentVersion = readCurrentVersion(path, token);
         } catch (SecretException e) {
-            throw e;
+            int status = e.getStatusCode();
+            if (status == 403) throw e;
+            // deleted secret and the like: the full read sorts it out (404)
+            if (status >= 400 && status < 500) return null;
+            return cached;
         } catch (Exception e) {
-            throw new SecretException("Failed to read secret from Vault", e);
+            return cached; // Vault unreachable: keep serving the cached copy
         }
+        if (currentVersion != cached.version) return null;
 
-        // 3) Store in cache
+        revalidatedReads.increment();
+        revalidatedCounter.increment();
+        return store(path, cached.values, cached.version);
+    }
+
+    /** 3) Store in cache */
+    private CachedDocument store(String path, Map<String, String> values, long version) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + cacheTtlMillis;
+        CachedDocument fetched = new CachedDocument(values, version, now, now + refreshAheadMillis, expiresAt,
+                expiresAt + staleWhileRevalidateMillis, expiresAt + staleIfErrorMillis);
         if (cacheTtlMillis > 0L) {
-            cache.put(cacheKey(path, key), value, System.currentTimeMillis() + cacheTtlMillis);
+            // With revalidation, keep expired entries one more TTL so their version can be checked.
+            long retainUntil = revalidate ? Math.max(fetched.retainUntil(), expiresAt + cacheTtlMillis) : fetched.retainUntil();
+            cache.put(path, fetched, retainUntil);
+        }
+        if (snapshot != null) {
+            snapshotFallback.remove(path); // Vault answered, the snapshot copy is no longer needed
+            snapshotDirty = true;
         }
+        return fetched;
+    }
 
-        return value;
+    /** Periodic snapshot write; skipped when nothing was read from Vault since the last one. */
+    private void writeSnapshotIfDirty() {
+        if (!snapshotDirty) return;
+        snapshotDirty = false;
+        try {
+            writeSnapshot();
+        } catch (SecretException e) {
+            snapshotDirty = true; // try again next time
+        }
+    }
+
+    /** Cached documents (stale ones included) plus snapshot entries that were not refreshed yet. */
+    private void writeSnapshot() throws SecretException {
+        Map<String, CachedDocument> documents = new LinkedHashMap<String, CachedDocument>(snapshotFallback);
+        documents.putAll(cache.entries());
+        snapshot.write(documents);
+    }
+
+    /**
+     * Queues one background refresh per path. The caller keeps the cached value.
+     * Failures are ignored here: the entry just ages, and the next caller past expiry
+     * reads from Vault itself (or gets stale-if-error data).
+     */
+    private void refreshInBackground(final String path) {
+        if (!backgroundRefresh || !refreshing.add(path)) return;
+        try {
+            scheduler.execute(() -> {
+                try {
+                    inFlight.execute(path, () -> fetchDocument(path));
+                } catch (Exception ignored) {
+                    // keep serving what we have
+                } finally {
+                    refreshing.remove(path);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(path); // client is closing
+        }
+    }
+
+    /**
+     * Polls the path in the background (see {@link ChangePoller}): a metadata read per poll,
+     * and a full read, which also refreshes the cache, only when the version moved.
+     * Every watch of the same path shares that poll.
+     */
+    @Override
+    public SecretWatch watch(String path, String key, SecretChangeListener listener) throws SecretException {
+        String current;
+        try {
+            current = readDocument(path).get(key);
+        } catch (SecretNotFoundException e) {
+            current = null; // fires once the path appears
+        }
+        return changePoller.watch(path, key, listener, current);
+    }
+
+    /**
+     * Version for the poller: metadata current_version, -1 when metadata cannot be read
+     * (the poller then reads the document). Deleted paths and versions throw SecretNotFoundException.
+     */
+    private long watchedVersion(String path) throws Exception {
+        if (!metadataReadable) return -1L;
+        String token = ensureToken();
+        try {
+            long version;
+            try {
+                version = readCurrentVersion(path, token);
+            } catch (SecretException se) {
+                if (se.getStatusCode() != 403) throw se;
+                invalidateToken(token);
+                if (!resilience.tryRetry()) throw se;
+                version = readCurrentVersion(path, ensureToken());
+            }
+            if (version < 0L) throw new SecretNotFoundException("Secret path not found: " + path);
+            return version;
+        } catch (SecretNotFoundException e) {
+            throw e;
+        } catch (SecretException se) {
+            if (se.getStatusCode() == 404) throw new SecretNotFoundException("Secret path not found: " + path);
+            if (se.getStatusCode() == 403) {
+                metadataReadable = false; // fresh token refused too: the policy has no metadata access
+                return -1L;
+            }
+            throw se;
+        }
+    }
+
+    /** Drops the cached document and any cached "not found" for the path. */
+    @Override
+    public void invalidate(String path) {
+        cache.remove(path);
+        notFound.remove(path);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.clear();
+        notFound.clear();
+    }
+
+    /** Number of expired documents kept after a metadata check showed the same version. */
+    public long revalidatedReadCount() {
+        return revalidatedReads.sum();
+    }
+
+    /** Role, outstanding requests, latency and breaker state of each vault.addr node. */
+    public String endpointStatus() {
+        return endpoints.toString();
+    }
+
+    /** Circuit breaker, reads in flight and concurrency limit, retry tokens and read timeout (vault.breaker.* etc.). */
+    public String resilienceStatus() {
+        return resilience.toString();
+    }
+
+    /** Number of reads that were served by another thread's in-flight Vault request. */
+    public long coalescedReadCount() {
+        return inFlight.coalescedCount();
+    }
+
+    /** Number of reads that went to Vault themselves (cache misses that led a flight). */
+    public long leaderReadCount() {
+        return inFlight.leaderCount();
+    }
+
+    /** Returns a token that is not about to expire, logging in if needed. */
+    private String ensureToken() throws Exception {
+        TokenLease current = lease;
+        if (current != null && current.usable(System.currentTimeMillis())) return current.token;
+        synchronized (this) {
+            current = lease;
+            if (current != null && current.usable(System.currentTimeMillis())) return current.token;
+            current = loginAppRole();
+            installLease(current, true);
+            return current.token;
+        }
+    }
+
+    /** Drops the token after Vault rejected it, unless another thread already replaced it. */
+    private synchronized void invalidateToken(String token) {
+        if (lease != null && lease.token.equals(token)) lease = null;
+    }
+
+    /** Caller holds this lock. */
+    private void installLease(TokenLease next, boolean fromLogin) {
+        lease = next;
+        if (fromLogin) loginLeaseMillis = next.leaseMillis;
+        scheduleRenewal(next, (long) (next.leaseMillis * tokenRenewRatio));
     }
 
-    private String cacheKey(String path, String key) {
-        return path + "|" + key;
+    /** Caller holds this lock. */
+    private void scheduleRenewal(final TokenLease target, long delayMillis) {
+        if (!tokenRenewEnabled || target.leaseMillis <= 0L) return; // non-expiring token
+        if (renewTask != null) renewTask.cancel(false);
+        try {
+            renewTask = renewer.schedule(() -> renewOrLogin(target), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // client is closing
+        }
     }
 
-    private void ensureToken() throws Exception {
-        if (clientToken != null && !clientToken.isEmpty()) return;
+    /**
+     * Background renewal ahead of expiry.
+     * Renews through renew-self while Vault keeps granting a useful TTL, and logs in again
+     * only when the token is not renewable, renewal fails, or max_ttl caps the granted TTL.
+     */
+    private void renewOrLogin(TokenLease target) {
+        long loginLease;
+        synchronized (this) {
+            if (lease != target) return; // replaced in the meantime (e.g. after a 403)
+            loginLease = loginLeaseMillis;
+        }
+
+        TokenLease next = null;
+        boolean fromLogin = false;
+        if (target.renewable) {
+            try {
+                next = renewSelf(target.token);
+                // Close to max_ttl Vault grants less and less; a fresh login is cheaper than
+                // renewing ever more often.
+                if (next.leaseMillis > 0L && next.leaseMillis < loginLease / 3) next = null;
+            } catch (Exception e) {
+                next = null;
+            }
+        }
+        if (next == null) {
+            try {
+                next = loginAppRole();
+                fromLogin = true;
+            } catch (Exception e) {
+                // Vault unreachable: retry while the current token is still valid.
+                synchronized (this) {
+                    long remaining = target.expiresAt - System.currentTimeMillis();
+                    if (lease == target && remaining > 0L) {
+                        scheduleRenewal(target, Math.max(1000L, Math.min(30000L, remaining / 2)));
+                    }
+                }
+                return;
+            }
+        }
+
         synchronized (this) {
-            if (clientToken != null && !clientToken.isEmpty()) return;
-            clientToken = loginAppRole();
+            if (lease != target && lease != null) return;
+            installLease(next, fromLogin);
         }
     }
 
-    private String loginAppRole() throws Exception {
-        String url = addr + (approleLoginPath.startsWith("/") ? approleLoginPath : ("/" + approleLoginPath));
-        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setRequestMethod("POST");
-        conn.setConnectTimeout(timeoutMs);
-        conn.setReadTimeout(timeoutMs);
-        conn.setDoOutput(true);
-        conn.setRequestProperty("Content-Type", "application/json");
+    private TokenLease loginAppRole() throws Exception {
+        String loginPath = approleLoginPath.startsWith("/") ? approleLoginPath : ("/" + approleLoginPath);
+        // Holds the secret_id: the bytes handed to the transport are zeroed once the login is done
+        byte[] payload = ("{\"role_id\":\"" + escapeJson(roleId) + "\",\"secret_id\":\"" + escapeJson(secretId) + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
 
-        String payload = "{\"role_id\":\"" + escapeJson(roleId) + "\",\"secret_id\":\"" + escapeJson(secretId) + "\"}";
-        conn.getOutputStream().write(payload.getBytes("UTF-8"));
+        int code;
+        String body;
+        long start = System.nanoTime();
+        try (HttpResponse response = endpoints.send(VaultEndpoints.Route.ACTIVE, loginPath,
+                url -> HttpRequest.post(url, payload).header("Content-Type", "application/json"))) {
+            code = response.status();
+            body = response.bodyAsString();
+        } finally {
+            Arrays.fill(payload, (byte) 0);
+            loginTimer.record(System.nanoTime() - start);
+        }
+
+        if (code < 200 || code >= 300) {
+            throw new SecretException("Vault AppRole login failed HTTP " + code + ": " + body, code);
+        }
+        return parseAuth(body, "login");
+    }
 
-        int code = conn.getResponseCode();
-        String body = HttpUtil.readResponseBody(conn);
-        conn.disconnect();
+    private TokenLease renewSelf(String token) throws Exception {
+        // POST /v1/auth/token/renew-self (empty body = renew by the token's default increment)
+        int code;
+        String body;
+        long start = System.nanoTime();
+        try (HttpResponse response = endpoints.send(VaultEndpoints.Route.ACTIVE, "/v1/auth/token/renew-self",
+                url -> HttpRequest.post(url, "{}").header("X-Vault-Token", token))) {
+            code = response.status();
+            body = response.bodyAsString();
+        } finally {
+            renewTimer.record(System.nanoTime() - start);
+        }
 
         if (code < 200 || code >= 300) {
-            throw new SecretException("Vault AppRole login failed HTTP " + code + ": " + body);
+            throw new SecretException("Vault token renewal failed HTTP " + code + ": " + body, code);
         }
+        return parseAuth(body, "renewal");
+    }
 
-        JsonNode root = MAPPER.readTree(body);
-        String token = root.path("auth").path("client_token").asText(null);
+    /** Reads auth.client_token, auth.lease_duration and auth.renewable. */
+    private static TokenLease parseAuth(String body, String operation) throws Exception {
+        JsonNode auth = MAPPER.readTree(body).path("auth");
+        String token = auth.path("client_token").asText(null);
         if (token == null || token.isEmpty()) {
-            throw new SecretException("Vault AppRole login response missing auth.client_token");
+            throw new SecretException("Vault " + operation + " response missing auth.client_token");
+        }
+        long leaseSeconds = auth.path("lease_duration").asLong(0L);
+        boolean renewable = auth.path("renewable").asBoolean(false);
+        return new TokenLease(token, renewable, leaseSeconds * 1000L, System.currentTimeMillis());
+    }
+
+    private List<String> listKv2Keys(String prefix, String token) throws Exception {
+        // KV v2 list: LIST /v1/<mount>/metadata/<prefix> (sent as GET ?list=true)
+        String folder = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        String endpoint = "/v1/" + mount + "/metadata/" + UrlUtil.encodePath(folder) + "?list=true";
+
+        int code;
+        String body;
+        try (HttpResponse response = endpoints.send(VaultEndpoints.Route.READ, endpoint,
+                url -> HttpRequest.get(url).header("X-Vault-Token", token))) {
+            code = response.status();
+            body = response.bodyAsString();
+        }
+
+        if (code == 404) {
+            return Collections.emptyList(); // empty folder
+        }
+        if (code < 200 || code >= 300) {
+            throw new SecretException("Vault list failed HTTP " + code + ": " + body, code);
+        }
+
+        List<String> keys = new ArrayList<String>();
+        for (JsonNode key : MAPPER.readTree(body).path("data").path("keys")) {
+            keys.add(key.asText());
         }
-        return token;
+        return keys;
     }
 
-    private String readKv2Secret(String path, String key, String token) throws Exception {
+    private Kv2Document readKv2Document(String path, String token) throws Exception {
         // KV v2 read: /v1/<mount>/data/<path>
         String endpoint = "/v1/" + mount + "/data/" + UrlUtil.encodePath(path);
-        String url = addr + endpoint;
 
-        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(timeoutMs);
-        conn.setReadTimeout(timeoutMs);
-        conn.setRequestProperty("X-Vault-Token", token);
+        int timeoutMs = resilience.readTimeoutMs();
+        long start = System.nanoTime();
+        try (VaultResilience.Permit permit = resilience.acquire();
+             HttpResponse response = send(permit, endpoint, token, timeoutMs)) {
+            int code = response.status();
+            if (code == 404) {
+                throw new SecretNotFoundException("Secret path not found: " + path);
+            }
+            if (code < 200 || code >= 300) {
+                throw new SecretException("Vault read failed HTTP " + code + ": " + response.bodyAsString(), code);
+            }
+            return parseKv2Data(response.body(), path);
+        } finally {
+            kvReadTimer.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Streams the KV v2 response and keeps only data.data and data.metadata.version: no String
+     * copy of the body and no JsonNode tree. Everything else is skipped token by token.
+     * Jackson recycles the parser's read and text buffers between calls.
+     */
+    private static Kv2Document parseKv2Data(InputStream body, String path) throws Exception {
+        try (JsonParser parser = MAPPER.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new SecretException("Vault read returned no JSON object for: " + path);
+            }
+            Map<String, String> document = null;
+            long version = -1L;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"data".equals(field) || value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String inner = parser.currentName();
+                    JsonToken innerValue = parser.nextToken();
+                    if ("data".equals(inner) && innerValue == JsonToken.START_OBJECT) {
+                        document = readDataFields(parser);
+                    } else if ("metadata".equals(inner) && innerValue == JsonToken.START_OBJECT) {
+                        version = readLongField(parser, "version");
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            if (document == null) {
+                throw new SecretNotFoundException("Secret path not found: " + path);
+            }
+            return new Kv2Document(Collections.unmodifiableMap(document), version);
+        }
+    }
 
-        int code = conn.getResponseCode();
-        String body = HttpUtil.readResponseBody(conn);
-        conn.disconnect();
+    /** The parser is on a START_OBJECT; returns the named numeric field (-1 if absent) and leaves it on the END_OBJECT. */
+    private static long readLongField(JsonParser parser, String name) throws IOException {
+        long value = -1L;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (name.equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                value = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
 
-        if (code == 404) {
-            throw new SecretNotFoundException("Secret path not found: " + path);
+    /** A KV read through the resilience permit: the outcome feeds the breaker, limit and timeout. */
+    private HttpResponse send(VaultResilience.Permit permit, String endpoint, String token, int timeoutMs) throws IOException {
+        HttpResponse response;
+        try {
+            response = endpoints.send(VaultEndpoints.Route.READ, endpoint,
+                    url -> HttpRequest.get(url).header("X-Vault-Token", token).readTimeoutMs(timeoutMs));
+        } catch (IOException e) {
+            permit.failed();
+            throw e;
         }
-        if (code < 200 || code >= 300) {
-            throw new SecretException("Vault read failed HTTP " + code + ": " + body);
+        permit.completed(response.status());
+        return response;
+    }
+
+    /**
+     * KV v2 metadata read: GET /v1/<mount>/metadata/<path> → data.current_version.
+     * Returns -1 when that version was deleted or destroyed (its data read would be a 404).
+     */
+    private long readCurrentVersion(String path, String token) throws Exception {
+        String endpoint = "/v1/" + mount + "/metadata/" + UrlUtil.encodePath(path);
+
+        int timeoutMs = resilience.readTimeoutMs();
+        long start = System.nanoTime();
+        try (VaultResilience.Permit permit = resilience.acquire();
+             HttpResponse response = send(permit, endpoint, token, timeoutMs)) {
+            int code = response.status();
+            if (code < 200 || code >= 300) {
+                throw new SecretException("Vault metadata read failed HTTP " + code + ": " + response.bodyAsString(), code);
+            }
+            long current = -1L;
+            Set<String> deleted = new HashSet<String>();
+            try (JsonParser parser = MAPPER.getFactory().createParser(response.body())) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) return -1L;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    if (parser.nextToken() != JsonToken.START_OBJECT || !"data".equals(field)) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String inner = parser.currentName();
+                        JsonToken value = parser.nextToken();
+                        if ("current_version".equals(inner) && value == JsonToken.VALUE_NUMBER_INT) {
+                            current = parser.getLongValue();
+                        } else if ("versions".equals(inner) && value == JsonToken.START_OBJECT) {
+                            readDeletedVersions(parser, deleted);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+            return deleted.contains(String.valueOf(current)) ? -1L : current;
+        } finally {
+            metadataReadTimer.record(System.nanoTime() - start);
         }
+    }
 
-        JsonNode root = MAPPER.readTree(body);
-        JsonNode valueNode = root.path("data").path("data").path(key);
-        if (valueNode.isMissingNode() || valueNode.isNull()) {
-            throw new SecretNotFoundException("Key not found: " + path + "." + key);
+    /** versions: {"3": {"deletion_time": "...", "destroyed": false}, ...} → the deleted/destroyed ones. */
+    private static void readDeletedVersions(JsonParser parser, Set<String> deleted) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String version = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("deletion_time".equals(field) && value == JsonToken.VALUE_STRING && !parser.getText().isEmpty()) {
+                    deleted.add(version);
+                } else if ("destroyed".equals(field) && value == JsonToken.VALUE_TRUE) {
+                    deleted.add(version);
+                } else {
+                    parser.skipChildren();
+                }
+            }
         }
+    }
 
-        // Most static secrets are strings; if not, convert to JSON string.
-        if (valueNode.isTextual()) {
-            return valueNode.asText();
+    /** The parser is on the START_OBJECT of data.data; returns with it on the matching END_OBJECT. */
+    private static Map<String, String> readDataFields(JsonParser parser) throws IOException {
+        Map<String, String> document = new LinkedHashMap<String, String>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_STRING) {
+                document.put(key, parser.getText());
+            } else if (value != JsonToken.VALUE_NULL) {
+                // Most static secrets are strings; if not, convert to JSON string.
+                document.put(key, MAPPER.writeValueAsString(MAPPER.readTree(parser)));
+            }
         }
-        return MAPPER.writeValueAsString(valueNode);
+        return document;
     }
 
     private static String escapeJson(String s) {
@@ -179,107 +1189,56 @@ public class VaultAppRoleKvV2Client implements SecretsClient {
 
     @Override
     public void close() {
+        changePoller.close();
+        endpoints.close();
+        scheduler.shutdownNow();
+        if (renewer != null) renewer.shutdownNow();
+        batchExecutor.shutdownNow();
+        asyncExecutor.shutdownNow();
+        transport.close();
+        if (snapshot != null && snapshotDirty) {
+            try {
+                writeSnapshot();
+            } catch (SecretException ignored) {
+                // the previous snapshot stays in place
+            }
+        }
         // Clear sensitive cached values on shutdown
         cache.clear();
-        clientToken = null;
+        notFound.clear();
+        snapshotFallback.clear();
+        lease = null;
     }
 
-    /**
-     * Simple LRU cache with per-entry expiration.
-     * Thread-safe via internal synchronization.
-     */
-    /**
-     * Each cached item stores:
-     *      - value → the secret itself
-     *      - expiresAt → timestamp (milliseconds since epoch) when it should be treated as expired
-     * So expiration is checked by comparing:
-     *      System.currentTimeMillis() >= expiresAt
-     * **/
-    private static final class LruExpiringCache {
-        private final int maxEntries;
-        private final LinkedHashMap<String, Entry> map;
-
-        private static final class Entry {
-            final String value;
-            final long expiresAt;
-            Entry(String value, long expiresAt) {
-                this.value = value;
-                this.expiresAt = expiresAt;
-            }
-        }
-        /**
-         * The cache is built on a LinkedHashMap like this (simplified):
-         *      new LinkedHashMap<String, Entry>(16, 0.75f, true) { ... }
-         * That last parameter is important:
-         *      accessOrder = true
-         * This makes the map maintain entries in access order, not insertion order.
-         * Meaning:
-         *     - whenever you call get(key), that key becomes the “most recently used”
-         *     - the “least recently used” entry naturally stays at the front
-         *
-         * LRU eviction via removeEldestEntry
-         *  Inside the LinkedHashMap, we override "removeEldestEntry" method
-         *  This method is called automatically by put().
-         *  So whenever you insert a new entry, the map checks:
-         *      - “Do I now have more than maxEntries items?”
-         *      - If yes → it automatically evicts the oldest (“eldest”) entry
-         *  Because we are using accessOrder=true, the “eldest” means:
-         *    -  least recently used (LRU)
-         *  So maxEntries protects you from unbounded memory usage.
-         */
-        LruExpiringCache(final int maxEntries) {
-            this.maxEntries = Math.max(1, maxEntries);
-            this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
-                protected boolean removeEldestEntry(Map.Entry<String, LruExpiringCache.Entry> eldest) {
-                    return size() > LruExpiringCache.this.maxEntries;
-                }
-            };
-        }
-
-        /**
-         * What happens when you call get(...)
-         * Step-by-step behavior:
-         * 1. It looks up the entry in the map.
-         * 2. If missing → return null (cache miss)
-         * 3. If present:
-         *      - It checks expiry time.
-         *      - If expired:
-         *          - removes it immediately
-         *          - returns null (treat as cache miss)
-         * 4. If not expired:
-         *      - returns the cached value
-         * IMPORTANT SIDE-EFFECT:
-         * Because LinkedHashMap is in access-order mode, calling map.get(key) also:
-         *      - moves that entry to “most recently used” position.
-         */
-        synchronized String get(String key) {
-            Entry e = map.get(key);
-            if (e == null) return null;
-            if (System.currentTimeMillis() >= e.expiresAt) {
-                map.remove(key);
-                return null;
-            }
-            return e.value;
-        }
-        /**
-         * What happens when you call put(...)
-         * Step-by-step behavior:
-         * 1. Store the entry (or replace existing entry).
-         * 2. LinkedHashMap automatically evaluates removeEldestEntry(...)
-         * 3. If it now exceeds max size → evicts least recently used entry
-         * So the cache keeps itself within maxEntries automatically.
-         */
-        synchronized void put(String key, String value, long expiresAt) {
-            map.put(key, new Entry(value, expiresAt));
-        }
-        /**
-         * What happens when you call clear()
-         *      This removes everything, including secrets.
-         *      Your provider calls this in close() so secrets don’t remain in memory longer than necessary
-         *      when the app shuts down.
-         */
-        synchronized void clear() {
-            map.clear();
+    /** data.data of a KV v2 read plus data.metadata.version. */
+    private static final class Kv2Document {
+        final Map<String, String> values;
+        final long version;
+
+        Kv2Document(Map<String, String> values, long version) {
+            this.values = values;
+            this.version = version;
+        }
+    }
+
+    /** A Vault token plus the lifetime reported by the login/renew response. */
+    private static final class TokenLease {
+        final String token;
+        final boolean renewable;
+        final long leaseMillis;   // 0 = token does not expire
+        final long expiresAt;
+        final long usableUntil;   // a little before expiresAt, so requests don't race the expiry
+
+        TokenLease(String token, boolean renewable, long leaseMillis, long obtainedAt) {
+            this.token = token;
+            this.renewable = renewable;
+            this.leaseMillis = leaseMillis;
+            this.expiresAt = leaseMillis > 0L ? obtainedAt + leaseMillis : Long.MAX_VALUE;
+            this.usableUntil = leaseMillis > 0L ? expiresAt - Math.min(5000L, leaseMillis / 10) : Long.MAX_VALUE;
+        }
+
+        boolean usable(long now) {
+            return now < usableUntil;
         }
     }
 }
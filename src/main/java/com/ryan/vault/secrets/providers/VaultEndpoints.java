@@ -0,0 +1,269 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.Config;
+import com.ryan.vault.secrets.DaemonThreadFactory;
+import com.ryan.vault.secrets.HttpRequest;
+import com.ryan.vault.secrets.HttpResponse;
+import com.ryan.vault.secrets.HttpTransport;
+import com.ryan.vault.secrets.SecretsInstrumentation;
+import com.ryan.vault.secrets.UrlUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The Vault nodes of vault.addr (comma-separated) and where each request goes.
+ *
+ * Background probes of GET /v1/sys/health tell each node's role from the status code:
+ * 200 active, 473 performance standby, 429 standby (472 DR secondary is treated the same),
+ * anything else or no answer = down.
+ *  - {@link Route#ACTIVE} (login, token renewal) goes to the active node
+ *  - {@link Route#READ} (KV reads, metadata, list) is spread over the healthy performance
+ *    standbys, by least outstanding requests or by latency (EWMA x outstanding), and goes to the
+ *    active node when there is none
+ * Nodes of unknown role (before the first probe, or with probes off) are used like the preferred
+ * ones. Each node has a {@link CircuitBreaker}: connection errors and 5xx count as failures. A
+ * request that fails that way, or gets a 429, is sent to the next node right away; any other
+ * answer (403 included) is the caller's to handle. When every breaker is open the request still
+ * goes out, to the node whose breaker opened first, rather than failing unsent; such a forced
+ * request does not touch that breaker, so it cannot disturb a half-open trial.
+ *
+ * Probes run on their own thread (vault-health), with vault.health.timeoutMs as connect and read
+ * timeout, so a black-holed node never delays token renewal or the other background work.
+ *
+ * With a single address and no vault.health.intervalMs this is a plain pass-through.
+ */
+final class VaultEndpoints {
+
+    enum Route { ACTIVE, READ }
+
+    enum Role { UNKNOWN, ACTIVE, PERF_STANDBY, STANDBY, DOWN }
+
+    private static final double EWMA_ALPHA = 0.2d;
+
+    private final List<Endpoint> endpoints;
+    private final HttpTransport transport;
+    private final boolean balanceByLatency;
+    private final int healthTimeoutMs;
+    private final ScheduledExecutorService prober; // null = probes off
+    private final SecretsInstrumentation.Counter failovers;
+
+    VaultEndpoints(Properties p, HttpTransport transport, SecretsInstrumentation.Counter failovers) {
+        List<String> addresses = Config.getList(p, "vault.addr");
+        if (addresses.isEmpty()) throw new IllegalArgumentException("Missing property: vault.addr");
+
+        int failureThreshold = Config.getInt(p, "vault.endpoint.failureThreshold", 3);
+        long openMillis = Config.getLong(p, "vault.endpoint.openMs", 10000L);
+        List<Endpoint> list = new ArrayList<Endpoint>();
+        for (String address : addresses) {
+            list.add(new Endpoint(UrlUtil.trimTrailingSlash(address), new CircuitBreaker(failureThreshold, openMillis)));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.transport = transport;
+        this.failovers = failovers;
+
+        String balance = Config.get(p, "vault.read.balance", "least-outstanding").toLowerCase();
+        if (!"least-outstanding".equals(balance) && !"latency".equals(balance)) {
+            throw new IllegalArgumentException("Unknown vault.read.balance: " + balance);
+        }
+        this.balanceByLatency = "latency".equals(balance);
+        this.healthTimeoutMs = Config.getInt(p, "vault.health.timeoutMs", 1000);
+
+        long intervalMs = Config.getLong(p, "vault.health.intervalMs", endpoints.size() > 1 ? 5000L : 0L);
+        if (intervalMs > 0L) {
+            this.prober = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("vault-health"));
+            prober.scheduleWithFixedDelay(this::probeAll, 0L, intervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.prober = null;
+        }
+    }
+
+    /** Stops the health probes. */
+    void close() {
+        if (prober != null) prober.shutdownNow();
+    }
+
+    /** First configured address (for messages and key derivation). */
+    String primaryAddress() {
+        return endpoints.get(0).addr;
+    }
+
+    /**
+     * Sends the request built by requestFor(url) along the route, failing over to the next node
+     * on connection errors, 5xx and 429 only. Any other answer is returned as is: a 403 goes
+     * through the caller's single re-login path instead of being repeated on every node.
+     * The caller closes the response.
+     */
+    HttpResponse send(Route route, String pathAndQuery, Function<String, HttpRequest> requestFor) throws IOException {
+        List<Endpoint> plan = plan(route);
+        // Available nodes come first in the plan: if the first is not, every breaker is open
+        boolean force = !plan.get(0).breaker.isAvailable();
+        boolean sent = false;
+        IOException lastError = null;
+        HttpResponse held = null; // "ask another node" answer, returned if no other node answers
+        for (Endpoint e : plan) {
+            // Forced sends (every breaker open) bypass the breaker and leave its state alone
+            boolean acquired = e.breaker.tryAcquire();
+            if (!acquired && (!force || sent)) continue;
+            if (sent) failovers.increment();
+            sent = true;
+            if (held != null) {
+                held.close();
+                held = null;
+            }
+
+            e.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            HttpResponse response;
+            boolean failed = true; // until Vault answered without a 5xx: a RuntimeException counts too
+            try {
+                response = transport.send(requestFor.apply(e.addr + pathAndQuery));
+                failed = isServerError(response.status());
+            } catch (IOException ex) {
+                lastError = ex;
+                continue;
+            } finally {
+                e.outstanding.decrementAndGet();
+                // Always reports an acquired permit, so a half-open trial never stays reserved
+                if (acquired) {
+                    if (failed) e.breaker.onFailure();
+                    else e.breaker.onSuccess();
+                }
+            }
+
+            int code = response.status();
+            if (!failed) e.recordLatency(System.nanoTime() - start);
+            if (!failed && code != 429) return response;
+            held = response;
+        }
+        if (held != null) return held;
+        if (lastError != null) throw lastError;
+        throw new IOException("No Vault endpoint accepted the request: " + endpoints);
+    }
+
+    private static boolean isServerError(int code) {
+        return code >= 500 && code != 501;
+    }
+
+    /** Every node once: the balanced pick of the best tier first, then the rest of that tier, then the other tiers. */
+    private List<Endpoint> plan(Route route) {
+        if (endpoints.size() == 1) return endpoints;
+
+        List<Endpoint> preferred = new ArrayList<Endpoint>();
+        List<Endpoint> fallback = new ArrayList<Endpoint>();
+        List<Endpoint> unavailable = new ArrayList<Endpoint>();
+        Role best = route == Route.READ && hasAvailable(Role.PERF_STANDBY) ? Role.PERF_STANDBY : Role.ACTIVE;
+        for (Endpoint e : endpoints) {
+            if (!e.breaker.isAvailable()) {
+                unavailable.add(e);
+            } else if (e.role == best || e.role == Role.UNKNOWN) {
+                preferred.add(e);
+            } else if (e.role != Role.DOWN) {
+                fallback.add(e);   // active behind the standbys for reads; standbys forward writes
+            } else {
+                unavailable.add(e);
+            }
+        }
+
+        List<Endpoint> plan = new ArrayList<Endpoint>(endpoints.size());
+        if (!preferred.isEmpty()) {
+            Endpoint pick = route == Route.READ ? balanced(preferred) : preferred.get(0);
+            plan.add(pick);
+            for (Endpoint e : preferred) if (e != pick) plan.add(e);
+        }
+        plan.addAll(fallback);
+        // Last resort, soonest retry first
+        Collections.sort(unavailable, (a, b) -> Long.compare(a.breaker.openUntil(), b.breaker.openUntil()));
+        plan.addAll(unavailable);
+        return plan;
+    }
+
+    private boolean hasAvailable(Role role) {
+        for (Endpoint e : endpoints) {
+            if (e.role == role && e.breaker.isAvailable()) return true;
+        }
+        return false;
+    }
+
+    private Endpoint balanced(List<Endpoint> candidates) {
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        int ties = 0;
+        for (Endpoint e : candidates) {
+            int outstanding = e.outstanding.get();
+            double score = balanceByLatency ? (e.ewmaNanos + 1d) * (outstanding + 1) : outstanding;
+            if (score < bestScore) {
+                best = e;
+                bestScore = score;
+                ties = 1;
+            } else if (score == bestScore && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                best = e; // reservoir pick among equals, so idle nodes share the load
+            }
+        }
+        return best;
+    }
+
+    private void probeAll() {
+        for (Endpoint e : endpoints) probe(e);
+    }
+
+    private void probe(Endpoint e) {
+        Role role;
+        try (HttpResponse response = transport.send(HttpRequest.get(e.addr + "/v1/sys/health")
+                .connectTimeoutMs(healthTimeoutMs).readTimeoutMs(healthTimeoutMs))) {
+            int code = response.status();
+            if (code == 200) role = Role.ACTIVE;
+            else if (code == 473) role = Role.PERF_STANDBY;
+            else if (code == 429 || code == 472) role = Role.STANDBY;
+            else role = Role.DOWN; // 501 not initialized, 503 sealed, ...
+        } catch (IOException | RuntimeException ex) {
+            role = Role.DOWN;
+        }
+        Role previous = e.role;
+        e.role = role;
+        if (role != Role.DOWN && previous == Role.DOWN) e.breaker.allowTrialNow();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Endpoint e : endpoints) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(e);
+        }
+        return sb.toString();
+    }
+
+    static final class Endpoint {
+        final String addr;
+        final CircuitBreaker breaker;
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile Role role = Role.UNKNOWN;
+        volatile double ewmaNanos;
+
+        Endpoint(String addr, CircuitBreaker breaker) {
+            this.addr = addr;
+            this.breaker = breaker;
+        }
+
+        void recordLatency(long nanos) {
+            double current = ewmaNanos;
+            ewmaNanos = current == 0d ? nanos : current + EWMA_ALPHA * (nanos - current); // racy by design: a hint
+        }
+
+        @Override
+        public String toString() {
+            return addr + " " + role + " outstanding=" + outstanding.get()
+                    + String.format(" latency=%.1fms", ewmaNanos / 1e6) + " breaker=" + breaker;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.Config;
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretsInstrumentation;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side protection around the KV reads (data and metadata) of {@link VaultAppRoleKvV2Client},
+ * so a slow or failing Vault neither drains the callers' threads nor gets retried harder.
+ * Every part is off by default.
+ *
+ *  - Circuit breaker (vault.breaker.failureThreshold, vault.breaker.openMs): after that many failed
+ *    reads in a row, reads fail fast for openMs, then one trial read goes through. The failure
+ *    takes the client's stale-if-error path, so cached and snapshot values keep being served.
+ *  - Adaptive concurrency limit (vault.concurrency.limit = initial limit): AIMD on the reads in
+ *    flight. Each success while the limit is in use adds 1/limit (about +1 per round trip), each
+ *    failure multiplies it by vault.concurrency.backoffRatio, within [minLimit, maxLimit]. Over the
+ *    limit, a read waits up to vault.concurrency.maxWaitMs for a slot, then fails fast.
+ *  - Retry budget (vault.retry.budgetRatio): token bucket for the one-shot 403 retry. Each
+ *    successful read deposits budgetRatio tokens, vault.retry.budgetPerSecond tokens come in
+ *    over time, at most vault.retry.budgetMax are kept; a retry takes one.
+ *  - Adaptive read timeout (vault.timeout.percentile, e.g. 0.99): the read timeout becomes that
+ *    percentile of the last 256 reads times vault.timeout.multiplier, within [vault.timeout.minMs,
+ *    vault.http.readTimeoutMs]. Timed-out reads count with their elapsed time, so the timeout
+ *    grows back when Vault is slow for everyone.
+ *
+ * Failures are I/O errors (timeouts included) and 5xx / 429 answers; any other answer is a success.
+ */
+final class VaultResilience {
+
+    private static final int SAMPLES = 256;
+    private static final int MIN_SAMPLES = 100;
+    private static final long TIMEOUT_UPDATE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Circuit breaker (null = off)
+    private final CircuitBreaker breaker;
+
+    // AIMD limit (0 = off)
+    private final boolean limited;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final long maxWaitMillis;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private int waiting; // guarded by this
+
+    // Retry budget (ratio 0 = off: every 403 is retried)
+    private final double budgetRatio;
+    private final double budgetPerMilli;
+    private final double budgetMax;
+    private double tokens;        // guarded by budgetLock
+    private long tokensUpdatedAt; // guarded by budgetLock
+    private final Object budgetLock = new Object();
+
+    // Percentile read timeout (percentile 0 = off: the transport's read timeout)
+    private final double timeoutPercentile;
+    private final double timeoutMultiplier;
+    private final int timeoutMinMs;
+    private final int timeoutMaxMs;
+    private final long[] samples = new long[SAMPLES];
+    private final AtomicLong sampleCount = new AtomicLong();
+    private volatile int adaptiveTimeoutMs;
+    private volatile long timeoutUpdatedAt = Long.MIN_VALUE;
+
+    private final SecretsInstrumentation.Counter rejected;
+    private final SecretsInstrumentation.Counter retriesDenied;
+
+    VaultResilience(Properties p, SecretsInstrumentation.Counter rejected, SecretsInstrumentation.Counter retriesDenied) {
+        int failureThreshold = Config.getInt(p, "vault.breaker.failureThreshold", 0);
+        this.breaker = failureThreshold > 0
+                ? new CircuitBreaker(failureThreshold, Config.getLong(p, "vault.breaker.openMs", 5000L))
+                : null;
+
+        int initialLimit = Config.getInt(p, "vault.concurrency.limit", 0);
+        this.limited = initialLimit > 0;
+        this.minLimit = Math.max(1, Config.getInt(p, "vault.concurrency.minLimit", 1));
+        this.maxLimit = Math.max(minLimit, Config.getInt(p, "vault.concurrency.maxLimit", Math.max(1, initialLimit) * 4));
+        this.backoffRatio = Config.getDouble(p, "vault.concurrency.backoffRatio", 0.9d);
+        if (backoffRatio <= 0d || backoffRatio >= 1d) {
+            throw new IllegalArgumentException("vault.concurrency.backoffRatio must be in (0, 1): " + backoffRatio);
+        }
+        this.maxWaitMillis = Math.max(0L, Config.getLong(p, "vault.concurrency.maxWaitMs", 0L));
+        this.limit = Math.min(maxLimit, Math.max(minLimit, initialLimit));
+
+        this.budgetRatio = Math.max(0d, Config.getDouble(p, "vault.retry.budgetRatio", 0d));
+        this.budgetPerMilli = Math.max(0d, Config.getDouble(p, "vault.retry.budgetPerSecond", 1d)) / 1000d;
+        this.budgetMax = Math.max(1d, Config.getDouble(p, "vault.retry.budgetMax", 10d));
+        this.tokens = budgetMax;
+        this.tokensUpdatedAt = System.currentTimeMillis();
+
+        this.timeoutPercentile = Config.getDouble(p, "vault.timeout.percentile", 0d);
+        if (timeoutPercentile < 0d || timeoutPercentile >= 1d) {
+            throw new IllegalArgumentException("vault.timeout.percentile must be in [0, 1): " + timeoutPercentile);
+        }
+        this.timeoutMultiplier = Math.max(1d, Config.getDouble(p, "vault.timeout.multiplier", 2d));
+        this.timeoutMaxMs = Config.getInt(p, "vault.http.readTimeoutMs", Config.getInt(p, "vault.timeoutMs", 5000));
+        this.timeoutMinMs = Math.min(timeoutMaxMs, Math.max(1, Config.getInt(p, "vault.timeout.minMs", 100)));
+
+        this.rejected = rejected;
+        this.retriesDenied = retriesDenied;
+    }
+
+    /**
+     * A slot for one read, or a SecretException (status 503) right away when the breaker is open
+     * or the limit stays full for maxWaitMs. Close the permit when the read is done.
+     */
+    Permit acquire() throws SecretException {
+        if (limited && !acquireSlot()) {
+            rejected.increment();
+            throw new SecretException("Too many Vault reads in flight (vault.concurrency.*, limit "
+                    + (int) limit + ")", 503);
+        }
+        if (breaker != null && !breaker.tryAcquire()) {
+            if (limited) releaseSlot();
+            rejected.increment();
+            throw new SecretException("Vault circuit breaker is open (vault.breaker.*), not calling Vault", 503);
+        }
+        return new Permit();
+    }
+
+    /** Read timeout for the next request, 0 = the transport's. */
+    int readTimeoutMs() {
+        if (timeoutPercentile <= 0d) return 0;
+        long now = System.nanoTime();
+        if (now - timeoutUpdatedAt >= TIMEOUT_UPDATE_NANOS || timeoutUpdatedAt == Long.MIN_VALUE) {
+            // Refreshed at most once a second: it sorts a copy of the samples
+            timeoutUpdatedAt = now;
+            long count = sampleCount.get();
+            if (count < MIN_SAMPLES) {
+                adaptiveTimeoutMs = 0;
+            } else {
+                long[] copy = Arrays.copyOf(samples, (int) Math.min(SAMPLES, count));
+                Arrays.sort(copy);
+                long nanos = copy[Math.min(copy.length - 1, (int) Math.ceil(timeoutPercentile * copy.length) - 1)];
+                long ms = (long) Math.ceil(nanos * timeoutMultiplier / 1e6d);
+                adaptiveTimeoutMs = (int) Math.max(timeoutMinMs, Math.min(timeoutMaxMs, ms));
+            }
+        }
+        return adaptiveTimeoutMs;
+    }
+
+    /** True when the retry budget allows one more retry (always without a budget). */
+    boolean tryRetry() {
+        if (budgetRatio <= 0d) return true;
+        synchronized (budgetLock) {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(budgetMax, tokens + (now - tokensUpdatedAt) * budgetPerMilli);
+            tokensUpdatedAt = now;
+            if (tokens >= 1d) {
+                tokens -= 1d;
+                return true;
+            }
+        }
+        retriesDenied.increment();
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("breaker=").append(breaker == null ? "off" : breaker.toString());
+        sb.append(" inFlight=").append(inFlight.get());
+        sb.append(" limit=").append(limited ? String.format("%.1f", limit) : "off");
+        if (budgetRatio > 0d) {
+            synchronized (budgetLock) {
+                sb.append(String.format(" retryTokens=%.1f", tokens));
+            }
+        }
+        if (timeoutPercentile > 0d) {
+            int timeout = adaptiveTimeoutMs;
+            sb.append(" readTimeoutMs=").append(timeout > 0 ? String.valueOf(timeout) : "default");
+        }
+        return sb.toString();
+    }
+
+    private boolean acquireSlot() {
+        if (tryAcquireSlot()) return true;
+        if (maxWaitMillis <= 0L) return false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        synchronized (this) {
+            waiting++;
+            try {
+                while (!tryAcquireSlot()) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0L) return false;
+                    wait(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting--;
+            }
+        }
+    }
+
+    private boolean tryAcquireSlot() {
+        while (true) {
+            int n = inFlight.get();
+            if (n >= (int) limit) return false;
+            if (inFlight.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    private void releaseSlot() {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (waiting > 0) notify();
+        }
+    }
+
+    private synchronized void grow(int inFlightAtStart) {
+        // Only grow while the limit is actually in use, or it drifts up during quiet periods
+        if (inFlightAtStart * 2 >= limit) limit = Math.min(maxLimit, limit + 1d / limit);
+    }
+
+    private synchronized void shrink() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    private void recordLatency(long nanos) {
+        if (timeoutPercentile > 0d) samples[(int) (sampleCount.getAndIncrement() % SAMPLES)] = nanos; // racy by design
+    }
+
+    /** One read: report how it ended with {@link #completed(int)} or {@link #failed()}, then close. */
+    final class Permit implements AutoCloseable {
+        private final long start = System.nanoTime();
+        private final int inFlightAtStart = limited ? inFlight.get() : 0;
+        private boolean done;
+
+        /** Vault answered with this HTTP status. */
+        void completed(int status) {
+            if (status >= 500 || status == 429) {
+                failed();
+                return;
+            }
+            if (done) return;
+            done = true;
+            recordLatency(System.nanoTime() - start);
+            if (breaker != null) breaker.onSuccess();
+            if (limited) grow(inFlightAtStart);
+            if (budgetRatio > 0d) {
+                synchronized (budgetLock) {
+                    tokens = Math.min(budgetMax, tokens + budgetRatio);
+                }
+            }
+        }
+
+        /** No usable answer: I/O error, timeout, 5xx or 429. */
+        void failed() {
+            if (done) return;
+            done = true;
+            recordLatency(System.nanoTime() - start);
+            if (breaker != null) breaker.onFailure();
+            if (limited) shrink();
+        }
+
+        /** Without an outcome (unexpected exception), the read counts as failed. */
+        @Override
+        public void close() {
+            if (!done) failed();
+            if (limited) releaseSlot();
+        }
+    }
+}
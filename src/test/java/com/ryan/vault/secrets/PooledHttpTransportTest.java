@@ -0,0 +1,261 @@
+package com.ryan.vault.secrets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Response parsing and connection reuse of {@link PooledHttpTransport}, against a local socket
+ * server that answers each request with the next scripted raw response.
+ */
+public class PooledHttpTransportTest {
+
+    private ScriptedServer server;
+    private PooledHttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ScriptedServer();
+        transport = new PooledHttpTransport(2000, 2000, 2000, 4, 60000L);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    public void contentLengthBodyAndConnectionReuse() throws IOException {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst", false);
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 6\r\n\r\nsecond", false);
+
+        assertEquals("first", get("/v1/a"));
+        assertEquals("second", get("/v1/b"));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void chunkedBodyWithExtensionsAndTrailers() throws IOException {
+        server.respond("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5;name=value\r\nhello\r\n7\r\n, world\r\n0\r\nX-Trailer: ignored\r\n\r\n", false);
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nnext", false);
+
+        assertEquals("hello, world", get("/v1/a"));
+        assertEquals("next", get("/v1/b")); // the chunked body was consumed exactly
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void chunkSizeIsHexadecimal() throws IOException {
+        server.respond("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nA\r\n0123456789\r\n0\r\n\r\n", false);
+
+        assertEquals("0123456789", get("/v1/a"));
+    }
+
+    @Test
+    public void bodyWithoutLengthIsReadUntilClose() throws IOException {
+        server.respond("HTTP/1.1 200 OK\r\n\r\nuntil close", true);
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+
+        assertEquals("until close", get("/v1/a"));
+        assertEquals("ok", get("/v1/b"));
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    public void noContentHasNoBody() throws IOException {
+        server.respond("HTTP/1.1 204 No Content\r\n\r\n", false);
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", false);
+
+        try (HttpResponse response = transport.send(HttpRequest.get(server.url("/v1/a")))) {
+            assertEquals(204, response.status());
+            assertEquals("", response.bodyAsString());
+        }
+        assertEquals("ok", get("/v1/b"));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void headersAreCaseInsensitive() throws IOException {
+        server.respond("HTTP/1.1 404 Not Found\r\ncontent-type: application/json\r\nContent-Length: 2\r\n\r\n{}", false);
+
+        try (HttpResponse response = transport.send(HttpRequest.get(server.url("/v1/a")))) {
+            assertEquals(404, response.status());
+            assertEquals("application/json", response.header("Content-Type"));
+            assertEquals("{}", response.bodyAsString());
+        }
+    }
+
+    @Test
+    public void malformedStatusLineFails() {
+        server.respond("HTTX/1.1 200 OK\r\n\r\n", true);
+
+        assertFails("/v1/a");
+    }
+
+    @Test
+    public void truncatedContentLengthBodyFails() {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nabc", true);
+
+        assertFails("/v1/a");
+    }
+
+    @Test
+    public void invalidContentLengthFails() {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n", true);
+
+        assertFails("/v1/a");
+    }
+
+    @Test
+    public void malformedChunkSizeFails() {
+        server.respond("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\nhello\r\n0\r\n\r\n", true);
+
+        assertFails("/v1/a");
+    }
+
+    @Test
+    public void missingChunkTerminatorFails() {
+        server.respond("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhelloX\r\n0\r\n\r\n", true);
+
+        assertFails("/v1/a");
+    }
+
+    @Test
+    public void staleConnectionIsRetriedForGet() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst", true); // closes the kept-alive connection
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 6\r\n\r\nsecond", false);
+
+        assertEquals("first", get("/v1/a"));
+        assertTrue(server.closedOne.await(2, TimeUnit.SECONDS));
+        assertEquals("second", get("/v1/b"));
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    public void staleConnectionIsNotRetriedForPost() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst", true);
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 6\r\n\r\nsecond", false);
+
+        assertEquals("first", get("/v1/a"));
+        assertTrue(server.closedOne.await(2, TimeUnit.SECONDS));
+        try (HttpResponse response = transport.send(HttpRequest.post(server.url("/v1/auth/approle/login"), "{}"))) {
+            fail("POST was sent again on a new connection, status " + response.status());
+        } catch (IOException expected) {
+            // the login may have been processed: the caller decides
+        }
+        assertEquals(1, server.requests.get());
+    }
+
+    private String get(String path) throws IOException {
+        try (HttpResponse response = transport.send(HttpRequest.get(server.url(path)))) {
+            return response.bodyAsString();
+        }
+    }
+
+    private void assertFails(String path) {
+        try {
+            String body = get(path);
+            fail("Expected an IOException, got body: " + body);
+        } catch (IOException expected) {
+            // malformed or truncated response
+        }
+    }
+
+    /** Answers each request with the next scripted response, optionally closing the connection after it. */
+    private static final class ScriptedServer implements AutoCloseable {
+        private final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final BlockingQueue<String[]> responses = new LinkedBlockingQueue<String[]>();
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch closedOne = new CountDownLatch(1);
+
+        ScriptedServer() throws IOException {
+            Thread acceptor = new Thread(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        Socket s = socket.accept();
+                        connections.incrementAndGet();
+                        Thread t = new Thread(() -> serve(s), "scripted-http");
+                        t.setDaemon(true);
+                        t.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }, "scripted-http-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        void respond(String raw, boolean closeAfter) {
+            responses.add(new String[] {raw, String.valueOf(closeAfter)});
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:" + socket.getLocalPort() + path;
+        }
+
+        private void serve(Socket s) {
+            try (Socket conn = s) {
+                InputStream in = conn.getInputStream();
+                OutputStream out = conn.getOutputStream();
+                while (readRequest(in)) {
+                    requests.incrementAndGet();
+                    String[] next = responses.poll(2, TimeUnit.SECONDS);
+                    if (next == null) return;
+                    out.write(next[0].getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                    if (Boolean.parseBoolean(next[1])) return;
+                }
+            } catch (IOException | InterruptedException e) {
+                // connection dropped by the client
+            } finally {
+                closedOne.countDown();
+            }
+        }
+
+        /** Reads the head and the Content-Length body; false on EOF before a request. */
+        private static boolean readRequest(InputStream in) throws IOException {
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                head.write(b);
+                if (head.toString("ISO-8859-1").endsWith("\r\n\r\n")) break;
+            }
+            if (b == -1) return false;
+            int length = 0;
+            for (String line : head.toString("ISO-8859-1").split("\r\n")) {
+                if (line.toLowerCase().startsWith("content-length:")) length = Integer.parseInt(line.substring(15).trim());
+            }
+            for (int i = 0; i < length; i++) {
+                if (in.read() == -1) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.AsyncSecretsClient;
+import com.ryan.vault.secrets.MetricsSnapshot;
+import com.ryan.vault.secrets.SecretCapability;
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretNotFoundException;
+import com.ryan.vault.secrets.SecretsInstrumentation;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link ChainSecretsClient} over stub members whose answers the tests decide.
+ */
+public class ChainSecretsClientTest {
+
+    @Test
+    public void fallsBackWhenAMemberDoesNotHaveTheSecret() throws SecretException {
+        Stub first = Stub.failing(new SecretNotFoundException("Secret path not found: app"));
+        Stub second = Stub.answering("k", "v");
+        try (ChainSecretsClient chain = chain(new Properties(), first, second)) {
+            assertEquals("v", chain.getRequired("app", "k"));
+            assertEquals("v", chain.getRequiredAsync("app", "k").join());
+        }
+        assertEquals(2, first.calls.get());
+        assertEquals(2, second.calls.get());
+    }
+
+    @Test
+    public void fallsBackWhenAMemberHasAnOutage() throws SecretException {
+        Stub unreachable = Stub.failing(new SecretException("Failed to read secret from Vault", new IOException("refused")));
+        Stub sealed = Stub.failing(new SecretException("Vault read failed HTTP 503", 503));
+        Stub last = Stub.answering("k", "v");
+        try (ChainSecretsClient chain = chain(new Properties(), unreachable, sealed, last)) {
+            assertEquals("v", chain.getRequired("app", "k"));
+        }
+    }
+
+    @Test
+    public void permissionDeniedIsNotMaskedByTheNextMember() throws Exception {
+        Stub denied = Stub.failing(new SecretException("Vault read failed HTTP 403: permission denied", 403));
+        Stub fallback = Stub.answering("k", "v");
+        try (ChainSecretsClient chain = chain(new Properties(), denied, fallback)) {
+            try {
+                chain.getRequired("app", "k");
+                fail("Fell back after a 403");
+            } catch (SecretException expected) {
+                assertEquals(403, expected.getStatusCode());
+            }
+            try {
+                chain.getAllAsync("app").get(5, TimeUnit.SECONDS);
+                fail("Fell back after a 403");
+            } catch (ExecutionException expected) {
+                assertEquals(403, ((SecretException) expected.getCause()).getStatusCode());
+            }
+        }
+        assertEquals(0, fallback.calls.get());
+    }
+
+    @Test
+    public void notFoundEverywhereIsNotFound() {
+        Stub first = Stub.failing(new SecretNotFoundException("Secret path not found: app"));
+        Stub second = Stub.failing(new SecretNotFoundException("Missing environment secret: APP_K"));
+        try (ChainSecretsClient chain = chain(new Properties(), first, second)) {
+            chain.getRequired("app", "k");
+            fail("Expected SecretNotFoundException");
+        } catch (SecretNotFoundException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("[a, b]"));
+        } catch (SecretException e) {
+            fail("Expected SecretNotFoundException, got " + e);
+        }
+    }
+
+    @Test
+    public void anOutageAlongTheWayIsNotReportedAsNotFound() {
+        Stub first = Stub.failing(new SecretException("Vault circuit breaker is open", 503));
+        Stub second = Stub.failing(new SecretNotFoundException("Missing environment secret: APP_K"));
+        try (ChainSecretsClient chain = chain(new Properties(), first, second)) {
+            chain.getRequired("app", "k");
+            fail("Expected SecretException");
+        } catch (SecretException expected) {
+            assertFalse("an outage is not a miss", expected instanceof SecretNotFoundException);
+            assertEquals(503, expected.getStatusCode());
+        }
+    }
+
+    /**
+     * The hedge timer claims member 1, then member 0 fails before member 1 has even been called
+     * (the timer thread is held in the hedge counter, between the claim and the call). The lookup
+     * must wait for member 1 instead of failing because nothing seems pending.
+     */
+    @Test
+    public void hedgeRacingAFailureStillWaitsForTheHedgedMember() throws Exception {
+        final CompletableFuture<Map<String, String>> slow = new CompletableFuture<Map<String, String>>();
+        final CountDownLatch hedgeClaimed = new CountDownLatch(1);
+        final CountDownLatch firstFailed = new CountDownLatch(1);
+        SecretsInstrumentation heldHedge = new SecretsInstrumentation() {
+            @Override
+            public Counter counter(String name, String provider, String mount) {
+                if (!CHAIN_HEDGE.equals(name)) return NOOP_COUNTER;
+                return () -> {
+                    hedgeClaimed.countDown();
+                    try {
+                        firstFailed.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                };
+            }
+
+            @Override
+            public Timer timer(String name, String provider, String mount) {
+                return NOOP_TIMER;
+            }
+
+            @Override
+            public MetricsSnapshot snapshot() {
+                return MetricsSnapshot.EMPTY;
+            }
+        };
+        Properties p = new Properties();
+        p.setProperty("secrets.chain.hedge", "true");
+        p.setProperty("secrets.chain.hedgeDelayMs", "1");
+        p.setProperty("secrets.chain.hedgePercentile", "0");
+        try (ChainSecretsClient chain = new ChainSecretsClient(Arrays.asList("a", "b"),
+                Arrays.asList(new Stub(path -> slow), Stub.answering("k", "v")), p, heldHedge)) {
+            CompletableFuture<String> value = chain.getRequiredAsync("app", "k");
+            assertTrue("the hedge did not fire", hedgeClaimed.await(5, TimeUnit.SECONDS));
+            slow.completeExceptionally(new SecretException("Vault read failed HTTP 503", 503));
+            assertFalse("failed while the hedged member was starting", value.isDone());
+            firstFailed.countDown();
+            assertEquals("v", value.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static ChainSecretsClient chain(Properties p, Stub... members) {
+        String[] names = new String[members.length];
+        for (int i = 0; i < names.length; i++) names[i] = String.valueOf((char) ('a' + i));
+        return new ChainSecretsClient(Arrays.asList(names), Arrays.asList(members), p, SecretsInstrumentation.NOOP);
+    }
+
+    /** Member whose getAllAsync answer comes from the test; the blocking calls wait for it. */
+    private static final class Stub implements AsyncSecretsClient {
+        interface Answer {
+            CompletableFuture<Map<String, String>> answer(String path);
+        }
+
+        final Answer answer;
+        final AtomicInteger calls = new AtomicInteger();
+
+        Stub(Answer answer) {
+            this.answer = answer;
+        }
+
+        static Stub answering(String key, String value) {
+            return new Stub(path -> CompletableFuture.completedFuture(Collections.singletonMap(key, value)));
+        }
+
+        static Stub failing(SecretException error) {
+            return new Stub(path -> {
+                CompletableFuture<Map<String, String>> failed = new CompletableFuture<Map<String, String>>();
+                failed.completeExceptionally(error);
+                return failed;
+            });
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getAllAsync(String path) {
+            calls.incrementAndGet();
+            return answer.answer(path);
+        }
+
+        @Override
+        public CompletableFuture<String> getRequiredAsync(String path, String key) {
+            return getAllAsync(path).thenApply(values -> values.get(key));
+        }
+
+        @Override
+        public String getRequired(String path, String key) throws SecretException {
+            return getAll(path).get(key);
+        }
+
+        @Override
+        public Map<String, String> getAll(String path) throws SecretException {
+            try {
+                return getAllAsync(path).join();
+            } catch (CompletionException e) {
+                throw (SecretException) e.getCause();
+            }
+        }
+
+        @Override
+        public EnumSet<SecretCapability> capabilities() {
+            return EnumSet.of(SecretCapability.KV_READ);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.ryan.vault.secrets.providers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link ConcurrentExpiringCache} under concurrent gets and puts while eviction sorts.
+ */
+public class ConcurrentExpiringCacheTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Readers keep moving access times while writers push the cache over capacity, so every
+     * sweep sorts tens of thousands of entries whose access times change underneath it. A sort
+     * that read the live access time would fail with "Comparison method violates its general
+     * contract!"; put(...) would throw it to the writer.
+     */
+    @Test
+    public void evictionSortSurvivesConcurrentAccess() throws InterruptedException {
+        final int maxEntries = 50000;
+        final AtomicInteger evictions = new AtomicInteger();
+        final ConcurrentExpiringCache<String> cache =
+                new ConcurrentExpiringCache<String>(maxEntries, evictions::incrementAndGet);
+        for (int i = 0; i < maxEntries; i++) cache.put("k" + i, "v" + i, NEVER);
+
+        final int writers = 2;
+        final int readers = 4;
+        final AtomicInteger nextKey = new AtomicInteger(maxEntries);
+        final int lastKey = maxEntries * 4;
+        final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(writers);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < writers; w++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int k = nextKey.getAndIncrement(); k < lastKey; k = nextKey.getAndIncrement()) {
+                        cache.put("k" + k, "v" + k, NEVER);
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    writersDone.countDown();
+                }
+            }, "cache-writer-" + w));
+        }
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (writersDone.getCount() > 0) {
+                        cache.get("k" + random.nextInt(nextKey.get()));
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "cache-reader-" + r));
+        }
+        for (Thread t : threads) t.start();
+        start.countDown();
+        assertTrue("writers did not finish", writersDone.await(60, TimeUnit.SECONDS));
+        for (Thread t : threads) t.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertTrue("failures: " + failures, failures.isEmpty());
+        assertTrue("nothing was evicted", evictions.get() > 0);
+
+        // A sweep skipped while another thread held the lock may leave the size above the limit;
+        // the next put, with nobody else sweeping, brings it back under.
+        cache.put("last", "v", NEVER);
+        int size = cache.entries().size();
+        assertTrue("size " + size + " > maxEntries " + maxEntries, size <= maxEntries);
+        assertEquals("v", cache.get("last"));
+    }
+}
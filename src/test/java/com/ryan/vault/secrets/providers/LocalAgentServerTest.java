@@ -0,0 +1,337 @@
+package com.ryan.vault.secrets.providers;
+
+import com.ryan.vault.secrets.AsyncSecretsClient;
+import com.ryan.vault.secrets.SecretCapability;
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link LocalAgentServer} and {@link LocalAgentSecretsClient} over loopback TCP, against a
+ * backend that completes its lookups on a single pool thread.
+ */
+public class LocalAgentServerTest {
+
+    private static final String BIG = new String(new char[256 * 1024]).replace('\0', 'x');
+
+    private Path dir;
+    private Properties props;
+    private ExecutorService backendPool;
+    private Backend backend;
+    private LocalAgentServer agent;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("agent-test");
+        props = new Properties();
+        props.setProperty("secrets.agent.address", "tcp:127.0.0.1:" + freePort());
+        props.setProperty("secrets.agent.tokenFile", dir.resolve("token").toString());
+        props.setProperty("secrets.agent.timeoutMs", "2000");
+        props.setProperty("secrets.agent.nearCacheTtlSeconds", "0");
+        backendPool = Executors.newSingleThreadExecutor();
+        backend = new Backend(backendPool);
+        agent = LocalAgentServer.start(props, backend);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        agent.close();
+        backendPool.shutdownNow();
+        Files.deleteIfExists(dir.resolve("token"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void answersLookupsAndInvalidations() throws SecretException {
+        try (LocalAgentSecretsClient client = new LocalAgentSecretsClient(props)) {
+            assertEquals("v", client.getRequired("small", "k"));
+            try {
+                client.getAll("missing");
+                fail("Expected SecretNotFoundException");
+            } catch (SecretNotFoundException expected) {
+                // answered by the agent
+            }
+            client.invalidate("small");
+            assertEquals(Collections.singletonList("small"), backend.invalidated);
+        }
+    }
+
+    @Test
+    public void clientThatStopsReadingDoesNotStallTheBackend() throws Exception {
+        SocketChannel stalled = handshake();
+        try {
+            for (int id = 1; id <= 200; id++) {
+                AgentProtocol.writeFully(stalled,
+                        new AgentProtocol.FrameWriter(id, AgentProtocol.OP_GET_ALL).string("big").toBuffer());
+            }
+            // the only backend thread must still be free to answer somebody else
+            try (LocalAgentSecretsClient client = new LocalAgentSecretsClient(props)) {
+                assertEquals("v", client.getRequired("small", "k"));
+            }
+            assertTrue("the stalled connection was not dropped", awaitConnections(0));
+        } finally {
+            stalled.close();
+        }
+    }
+
+    @Test
+    public void oversizedHelloIsRefusedBeforeItIsRead() throws IOException {
+        try (SocketChannel channel = AgentProtocol.connect(props.getProperty("secrets.agent.address"))) {
+            ByteBuffer header = ByteBuffer.allocate(4).putInt(0, AgentProtocol.MAX_FRAME);
+            AgentProtocol.writeFully(channel, header);
+            assertClosedByAgent(channel);
+        }
+    }
+
+    @Test
+    public void silentConnectionIsClosedAfterTheHandshakeTimeout() throws IOException {
+        restart("secrets.agent.handshakeTimeoutMs", "200");
+        try (SocketChannel channel = AgentProtocol.connect(props.getProperty("secrets.agent.address"))) {
+            long start = System.nanoTime();
+            assertClosedByAgent(channel);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        }
+    }
+
+    @Test
+    public void connectionsOverTheLimitAreClosed() throws Exception {
+        restart("secrets.agent.maxConnections", "2");
+        SocketChannel first = handshake();
+        SocketChannel second = handshake();
+        try (SocketChannel third = AgentProtocol.connect(props.getProperty("secrets.agent.address"))) {
+            assertClosedByAgent(third);
+            assertEquals(2, agent.connectionCount());
+        } finally {
+            first.close();
+            second.close();
+        }
+        assertTrue(awaitConnections(0));
+        try (LocalAgentSecretsClient client = new LocalAgentSecretsClient(props)) {
+            assertEquals("v", client.getRequired("small", "k"));
+        }
+    }
+
+    private void restart(String key, String value) throws IOException {
+        agent.close();
+        props.setProperty("secrets.agent.address", "tcp:127.0.0.1:" + freePort());
+        props.setProperty(key, value);
+        agent = LocalAgentServer.start(props, backend);
+    }
+
+    /** Reads until the agent hangs up; fails if it is still open after a few seconds. */
+    private static void assertClosedByAgent(SocketChannel channel) throws IOException {
+        channel.socket().setSoTimeout(5000);
+        try {
+            InputStream in = channel.socket().getInputStream();
+            assertEquals(-1, in.read());
+        } catch (SocketTimeoutException e) {
+            fail("the agent kept the connection open");
+        } catch (IOException reset) {
+            // closed with unread data: reset
+        }
+    }
+
+    @Test
+    public void clientRefusesAnAgentWithoutTheToken() throws Exception {
+        try (ServerSocketChannel impostor = ServerSocketChannel.open()) {
+            impostor.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            props.setProperty("secrets.agent.address",
+                    "tcp:127.0.0.1:" + ((InetSocketAddress) impostor.getLocalAddress()).getPort());
+            // answers the challenge with a made-up proof, then returns whatever the client sends next
+            CompletableFuture<AgentProtocol.Frame> next = CompletableFuture.supplyAsync(() -> {
+                try (SocketChannel channel = impostor.accept()) {
+                    AgentProtocol.Frame hello = AgentProtocol.readFrame(channel);
+                    AgentProtocol.writeFully(channel, new AgentProtocol.FrameWriter(hello.id, AgentProtocol.STATUS_OK)
+                            .bytes(AgentProtocol.nonce()).bytes(new byte[32]).toBuffer());
+                    return AgentProtocol.readFrame(channel);
+                } catch (IOException e) {
+                    return null;
+                }
+            });
+            try (LocalAgentSecretsClient client = new LocalAgentSecretsClient(props)) {
+                client.getAll("small");
+                fail("Trusted an agent that does not hold the token");
+            } catch (SecretException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("could not prove"));
+            }
+            assertNull(next.get(5, TimeUnit.SECONDS)); // hung up without sending its own proof
+        }
+    }
+
+    @Test
+    public void defaultDirectoryIsCreatedPrivateAndCheckedByBothSides() throws Exception {
+        if (!AgentProtocol.unixSocketsSupported()) return; // no default address before JDK 16
+        agent.close();
+        String tmpdir = System.getProperty("java.io.tmpdir");
+        System.setProperty("java.io.tmpdir", dir.toString());
+        try {
+            Properties defaults = new Properties();
+            defaults.setProperty("secrets.agent.nearCacheTtlSeconds", "0");
+            agent = LocalAgentServer.start(defaults, backend);
+            Path home = AgentProtocol.defaultDirectory().toPath();
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(home)));
+            try (LocalAgentSecretsClient client = new LocalAgentSecretsClient(defaults)) {
+                assertEquals("v", client.getRequired("small", "k"));
+            }
+
+            Files.setPosixFilePermissions(home, PosixFilePermissions.fromString("rwxr-xr-x"));
+            try (LocalAgentSecretsClient client = new LocalAgentSecretsClient(defaults)) {
+                client.getAll("small");
+                fail("Used a token from a directory others can enter");
+            } catch (SecretException expected) {
+                // refused before reading the token
+            }
+            agent.close();
+            try {
+                agent = LocalAgentServer.start(defaults, backend);
+                fail("Started in a directory others can enter");
+            } catch (IOException expected) {
+                // refused before writing the token
+            }
+            Files.delete(home);
+        } finally {
+            System.setProperty("java.io.tmpdir", tmpdir);
+        }
+    }
+
+    @Test
+    public void secondAgentOnTheSameAddressLeavesTheFirstServing() throws Exception {
+        byte[] token = Files.readAllBytes(dir.resolve("token"));
+        try {
+            LocalAgentServer.start(props, backend).close();
+            fail("Started a second agent on a busy address");
+        } catch (IOException expected) {
+            // the address is taken
+        }
+        assertArrayEquals(token, Files.readAllBytes(dir.resolve("token")));
+        try (LocalAgentSecretsClient client = new LocalAgentSecretsClient(props)) {
+            assertEquals("v", client.getRequired("small", "k"));
+        }
+    }
+
+    @Test
+    public void agentRefusesAClientWithoutTheToken() throws IOException {
+        try (SocketChannel channel = AgentProtocol.connect(props.getProperty("secrets.agent.address"))) {
+            byte[] clientNonce = AgentProtocol.nonce();
+            AgentProtocol.writeFully(channel,
+                    new AgentProtocol.FrameWriter(1, AgentProtocol.OP_HELLO).bytes(clientNonce).toBuffer());
+            AgentProtocol.Frame challenge = AgentProtocol.readFrame(channel);
+            assertEquals(AgentProtocol.STATUS_OK, challenge.code);
+            AgentProtocol.writeFully(channel,
+                    new AgentProtocol.FrameWriter(2, AgentProtocol.OP_AUTH).bytes(new byte[32]).toBuffer());
+            assertClosedByAgent(channel);
+        }
+    }
+
+    /** A raw connection that has passed the handshake. */
+    private SocketChannel handshake() throws IOException {
+        SocketChannel channel = AgentProtocol.connect(props.getProperty("secrets.agent.address"));
+        byte[] token = Files.readAllBytes(dir.resolve("token"));
+        byte[] clientNonce = AgentProtocol.nonce();
+        AgentProtocol.writeFully(channel,
+                new AgentProtocol.FrameWriter(1, AgentProtocol.OP_HELLO).bytes(clientNonce).toBuffer());
+        AgentProtocol.Frame challenge = AgentProtocol.readFrame(channel);
+        byte[] agentNonce = AgentProtocol.readBytes(challenge.payload);
+        assertArrayEquals(AgentProtocol.proof(token, AgentProtocol.AGENT_ROLE, clientNonce, agentNonce),
+                AgentProtocol.readBytes(challenge.payload));
+        AgentProtocol.writeFully(channel, new AgentProtocol.FrameWriter(2, AgentProtocol.OP_AUTH)
+                .bytes(AgentProtocol.proof(token, AgentProtocol.CLIENT_ROLE, clientNonce, agentNonce)).toBuffer());
+        assertEquals(AgentProtocol.STATUS_OK, AgentProtocol.readFrame(channel).code);
+        return channel;
+    }
+
+    private boolean awaitConnections(int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && agent.connectionCount() != expected; i++) Thread.sleep(50);
+        return agent.connectionCount() == expected;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return s.getLocalPort();
+        }
+    }
+
+    /** "small" and "big" exist; every lookup completes on the given pool, like a real provider's miss. */
+    private static final class Backend implements AsyncSecretsClient {
+        final ExecutorService pool;
+        final List<String> invalidated = new CopyOnWriteArrayList<String>();
+
+        Backend(ExecutorService pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getAllAsync(String path) {
+            return CompletableFuture.supplyAsync(() -> {
+                if (path.equals("small")) return Collections.singletonMap("k", "v");
+                if (path.equals("big")) return Collections.singletonMap("k", BIG);
+                throw new CompletionException(new SecretNotFoundException("Secret path not found: " + path));
+            }, pool);
+        }
+
+        @Override
+        public CompletableFuture<String> getRequiredAsync(String path, String key) {
+            return getAllAsync(path).thenApply(values -> values.get(key));
+        }
+
+        @Override
+        public EnumSet<SecretCapability> capabilities() {
+            return EnumSet.of(SecretCapability.KV_READ);
+        }
+
+        @Override
+        public String getRequired(String path, String key) throws SecretException {
+            return getAll(path).get(key);
+        }
+
+        @Override
+        public Map<String, String> getAll(String path) throws SecretException {
+            try {
+                return getAllAsync(path).join();
+            } catch (CompletionException e) {
+                throw (SecretException) e.getCause();
+            }
+        }
+
+        @Override
+        public void invalidate(String path) {
+            invalidated.add(path);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
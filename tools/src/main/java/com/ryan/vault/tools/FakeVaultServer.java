@@ -0,0 +1,353 @@
+package com.ryan.vault.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ryan.vault.secrets.DaemonThreadFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the Vault endpoints this library calls, for benchmarks and demos.
+ * Not a security boundary: any role_id/secret_id is accepted.
+ *
+ * Endpoints:
+ *  - POST /v1/auth/approle/login, POST /v1/auth/token/renew-self
+ *  - GET  /v1/<mount>/data/<path>, GET /v1/<mount>/metadata/<path> (and ?list=true)
+ *  - GET  /v1/sys/health
+ *
+ * Knobs (changeable while running): latency added to every request, a failure rate for
+ * KV reads (HTTP 503), the token TTL and the /v1/sys/health status. Tokens really expire: a KV
+ * read with an expired or unknown token gets HTTP 403, like Vault. {@link #expireAllTokens()}
+ * forces that.
+ *
+ * {@link #startStandby(FakeVaultServer)} starts a second node sharing the first one's secrets
+ * and tokens that reports itself as a performance standby (health 473), for multi-node tests.
+ *
+ * Part of the tools module, never of the library jar. The JDK server leaves Nagle on, which adds
+ * ~40 ms to small keep-alive responses: run the JVM with -Dsun.net.httpserver.nodelay=true
+ * (the benchmark forks and the load test command in the README do).
+ */
+public final class FakeVaultServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String mount;
+
+    private volatile long latencyMicros;
+    private volatile double errorRate;
+    private volatile long tokenTtlSeconds = 3600L;
+    private volatile int healthStatus;
+
+    private final ConcurrentHashMap<String, Long> tokens; // token -> expiresAt, shared with standbys
+    private final ConcurrentHashMap<String, Document> secrets; // shared with standbys
+
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong renewals = new AtomicLong();
+    private final AtomicLong kvReads = new AtomicLong();
+    private final AtomicLong metadataReads = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private static final class Document {
+        final Map<String, String> data;
+        final long version;
+
+        Document(Map<String, String> data, long version) {
+            this.data = data;
+            this.version = version;
+        }
+    }
+
+    /** Plain HTTP on 127.0.0.1, on a free port. */
+    public static FakeVaultServer start(String mount) throws IOException {
+        return new FakeVaultServer(mount, null, null);
+    }
+
+    /** HTTPS on 127.0.0.1, on a free port, with the given server certificate context. */
+    public static FakeVaultServer startHttps(String mount, SSLContext sslContext) throws IOException {
+        return new FakeVaultServer(mount, sslContext, null);
+    }
+
+    /** Plain HTTP performance standby of the given node: same secrets and tokens, health 473. */
+    public static FakeVaultServer startStandby(FakeVaultServer active) throws IOException {
+        return new FakeVaultServer(active.mount, null, active);
+    }
+
+    private FakeVaultServer(String mount, SSLContext sslContext, FakeVaultServer active) throws IOException {
+        this.mount = mount;
+        this.tokens = active != null ? active.tokens : new ConcurrentHashMap<String, Long>();
+        this.secrets = active != null ? active.secrets : new ConcurrentHashMap<String, Document>();
+        this.healthStatus = active != null ? 473 : 200;
+        InetSocketAddress bind = new InetSocketAddress("127.0.0.1", 0);
+        if (sslContext != null) {
+            HttpsServer https = HttpsServer.create(bind, 1024);
+            https.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            this.server = https;
+        } else {
+            this.server = HttpServer.create(bind, 1024);
+        }
+        this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("fake-vault"));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /** e.g. http://127.0.0.1:54321 */
+    public String address() {
+        String scheme = server instanceof HttpsServer ? "https" : "http";
+        return scheme + "://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Client properties for this server (vault.addr, vault.mount, AppRole ids). */
+    public Properties clientProperties() {
+        Properties p = new Properties();
+        p.setProperty("secrets.provider", "vault");
+        p.setProperty("vault.addr", address());
+        p.setProperty("vault.mount", mount);
+        p.setProperty("vault.approle.role_id", "fake-role");
+        p.setProperty("vault.approle.secret_id", "fake-secret");
+        return p;
+    }
+
+    public FakeVaultServer latencyMicros(long latencyMicros) {
+        this.latencyMicros = Math.max(0L, latencyMicros);
+        return this;
+    }
+
+    /** Fraction in [0, 1] of KV reads answered with HTTP 503. */
+    public FakeVaultServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /** Status of /v1/sys/health: 200 active, 473 performance standby, 429 standby, 503 sealed. */
+    public FakeVaultServer healthStatus(int healthStatus) {
+        this.healthStatus = healthStatus;
+        return this;
+    }
+
+    /** lease_duration of tokens issued from now on. */
+    public FakeVaultServer tokenTtlSeconds(long tokenTtlSeconds) {
+        this.tokenTtlSeconds = tokenTtlSeconds;
+        return this;
+    }
+
+    /** Creates or updates a secret; each update bumps its version. */
+    public FakeVaultServer putSecret(String path, Map<String, String> data) {
+        Map<String, String> copy = Collections.unmodifiableMap(new LinkedHashMap<String, String>(data));
+        secrets.compute(path, (p, old) -> new Document(copy, old == null ? 1L : old.version + 1L));
+        return this;
+    }
+
+    public FakeVaultServer deleteSecret(String path) {
+        secrets.remove(path);
+        return this;
+    }
+
+    /** Every issued token is rejected from now on, as if all leases had run out. */
+    public void expireAllTokens() {
+        tokens.clear();
+    }
+
+    public long loginCount() { return logins.get(); }
+    public long renewalCount() { return renewals.get(); }
+    public long kvReadCount() { return kvReads.get(); }
+    public long metadataReadCount() { return metadataReads.get(); }
+    public long injectedErrorCount() { return injectedErrors.get(); }
+
+    public void resetCounters() {
+        logins.set(0L);
+        renewals.set(0L);
+        kvReads.set(0L);
+        metadataReads.set(0L);
+        injectedErrors.set(0L);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            drain(ex.getRequestBody());
+            simulateLatency();
+
+            String path = ex.getRequestURI().getPath();
+            String query = ex.getRequestURI().getQuery();
+            String dataPrefix = "/v1/" + mount + "/data/";
+            String metadataPrefix = "/v1/" + mount + "/metadata/";
+
+            if ("/v1/auth/approle/login".equals(path)) {
+                logins.incrementAndGet();
+                respond(ex, 200, auth(issueToken()));
+            } else if ("/v1/auth/token/renew-self".equals(path)) {
+                String token = validToken(ex);
+                if (token == null) {
+                    respond(ex, 403, errors("permission denied"));
+                    return;
+                }
+                renewals.incrementAndGet();
+                tokens.put(token, System.currentTimeMillis() + tokenTtlSeconds * 1000L);
+                respond(ex, 200, auth(token));
+            } else if ("/v1/sys/health".equals(path)) {
+                int status = healthStatus;
+                ObjectNode health = MAPPER.createObjectNode();
+                health.put("initialized", true).put("sealed", status == 503)
+                        .put("standby", status == 429 || status == 473).put("performance_standby", status == 473);
+                respond(ex, status, health);
+            } else if (path.startsWith(dataPrefix)) {
+                if (validToken(ex) == null) {
+                    respond(ex, 403, errors("permission denied"));
+                    return;
+                }
+                kvReads.incrementAndGet();
+                if (errorRate > 0d && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    injectedErrors.incrementAndGet();
+                    respond(ex, 503, errors("injected failure"));
+                    return;
+                }
+                Document doc = secrets.get(path.substring(dataPrefix.length()));
+                if (doc == null) {
+                    respond(ex, 404, errors());
+                    return;
+                }
+                ObjectNode body = MAPPER.createObjectNode();
+                ObjectNode data = body.putObject("data");
+                ObjectNode values = data.putObject("data");
+                for (Map.Entry<String, String> e : doc.data.entrySet()) values.put(e.getKey(), e.getValue());
+                data.putObject("metadata").put("version", doc.version);
+                respond(ex, 200, body);
+            } else if (path.startsWith(metadataPrefix)) {
+                if (validToken(ex) == null) {
+                    respond(ex, 403, errors("permission denied"));
+                    return;
+                }
+                String secretPath = path.substring(metadataPrefix.length());
+                if (query != null && query.contains("list=true")) {
+                    list(ex, secretPath);
+                } else {
+                    metadataReads.incrementAndGet();
+                    Document doc = secrets.get(secretPath);
+                    if (doc == null) {
+                        respond(ex, 404, errors());
+                        return;
+                    }
+                    ObjectNode body = MAPPER.createObjectNode();
+                    body.putObject("data").put("current_version", doc.version);
+                    respond(ex, 200, body);
+                }
+            } else {
+                respond(ex, 404, errors());
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    /** Immediate children of a folder: "name" for secrets, "name/" for sub-folders. */
+    private void list(HttpExchange ex, String folder) throws IOException {
+        String prefix = folder.isEmpty() || folder.endsWith("/") ? folder : folder + "/";
+        TreeSet<String> children = new TreeSet<String>();
+        for (String p : secrets.keySet()) {
+            if (!p.startsWith(prefix)) continue;
+            String rest = p.substring(prefix.length());
+            int slash = rest.indexOf('/');
+            children.add(slash < 0 ? rest : rest.substring(0, slash + 1));
+        }
+        if (children.isEmpty()) {
+            respond(ex, 404, errors());
+            return;
+        }
+        ObjectNode body = MAPPER.createObjectNode();
+        ArrayNode keys = body.putObject("data").putArray("keys");
+        for (String child : children) keys.add(child);
+        respond(ex, 200, body);
+    }
+
+    private String issueToken() {
+        String token = "fake." + UUID.randomUUID();
+        tokens.put(token, tokenTtlSeconds > 0L ? System.currentTimeMillis() + tokenTtlSeconds * 1000L : Long.MAX_VALUE);
+        return token;
+    }
+
+    private String validToken(HttpExchange ex) {
+        String token = ex.getRequestHeaders().getFirst("X-Vault-Token");
+        if (token == null) return null;
+        Long expiresAt = tokens.get(token);
+        if (expiresAt == null) return null;
+        if (System.currentTimeMillis() >= expiresAt) {
+            tokens.remove(token, expiresAt);
+            return null;
+        }
+        return token;
+    }
+
+    private ObjectNode auth(String token) {
+        ObjectNode body = MAPPER.createObjectNode();
+        body.putObject("auth")
+                .put("client_token", token)
+                .put("lease_duration", tokenTtlSeconds)
+                .put("renewable", true);
+        return body;
+    }
+
+    private static ObjectNode errors(String... messages) {
+        ObjectNode body = MAPPER.createObjectNode();
+        ArrayNode list = body.putArray("errors");
+        for (String m : messages) list.add(m);
+        return body;
+    }
+
+    private void simulateLatency() {
+        long micros = latencyMicros;
+        if (micros <= 0L) return;
+        long until = System.nanoTime() + micros * 1000L;
+        try {
+            // sleep() alone overshoots short delays by a lot; spin for the last stretch
+            if (micros > 2000L) Thread.sleep((micros - 1000L) / 1000L);
+            while (System.nanoTime() < until) Thread.yield();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange ex, int status, ObjectNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[1024];
+        while (in.read(buf) != -1) {
+            // request bodies (login payloads) are not inspected
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.ryan.vault.tools;
+
+import com.ryan.vault.secrets.Config;
+import com.ryan.vault.secrets.DaemonThreadFactory;
+import com.ryan.vault.secrets.MetricsSnapshot;
+import com.ryan.vault.secrets.SecretException;
+import com.ryan.vault.secrets.SecretsClient;
+import com.ryan.vault.secrets.SecretsClientFactory;
+import com.ryan.vault.secrets.SecretsInstrumentation;
+import com.ryan.vault.secrets.SecretsMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test (java ... LoadGenerator [configFile], or Main --load [configFile] with the tools jar
+ * on the class path), for sizing Vault and choosing cache settings: worker threads call
+ * getRequired(path, key) on any provider from {@link SecretsClientFactory} for a fixed time,
+ * then it prints throughput, latency percentiles, the cache hit ratio and the Vault calls per second.
+ *
+ * Properties (from the config file; -D system properties starting with load., secrets. or vault.
+ * override them, and a missing config file means only those):
+ *  - load.threads (default 8), load.virtualThreads: one virtual thread per worker (needs Java 21)
+ *  - load.durationSeconds (default 30), load.warmupSeconds: not measured (default 5)
+ *  - load.rate: target calls per second over all threads, 0 = as fast as possible (default 0).
+ *    Calls are scheduled at fixed times and latency counts from the scheduled time, so a stall
+ *    shows up in the percentiles instead of just lowering the rate
+ *  - load.paths: the paths to read, or load.pathCount paths named load.pathPrefix + 0..n-1
+ *    (defaults 100, load/s); load.keys: keys read from each path (default password)
+ *  - load.zipfSkew: path popularity, path i is picked with weight 1/(i+1)^skew; 0 = uniform (default 0.99)
+ *  - load.fakeVault: start an in-process {@link FakeVaultServer} holding the paths and point the
+ *    vault.* properties at it, no network needed (default false); load.fakeVault.latencyMicros and
+ *    load.fakeVault.errorRate set its per-request latency and injected 503 rate
+ * Cache settings are the usual secrets.cache.* properties.
+ */
+public final class LoadGenerator {
+
+    private final Properties p;
+    private final int threads;
+    private final boolean virtualThreads;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final double rate;
+    private final String[] paths;
+    private final String[] keys;
+    private final double zipfSkew;
+    private final double[] zipfCdf; // null = uniform
+
+    private final SecretsMetrics load = new SecretsMetrics();
+    private volatile long measureFrom;
+    private volatile String firstError;
+
+    private LoadGenerator(Properties p) {
+        this.p = p;
+        this.threads = Math.max(1, Config.getInt(p, "load.threads", 8));
+        this.virtualThreads = Config.getBoolean(p, "load.virtualThreads", false);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Math.max(1L, Config.getLong(p, "load.durationSeconds", 30L)));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Math.max(0L, Config.getLong(p, "load.warmupSeconds", 5L)));
+        this.rate = Math.max(0d, Config.getDouble(p, "load.rate", 0d));
+
+        List<String> pathList = Config.getList(p, "load.paths");
+        if (pathList.isEmpty()) {
+            int count = Math.max(1, Config.getInt(p, "load.pathCount", 100));
+            String prefix = Config.get(p, "load.pathPrefix", "load/s");
+            pathList = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) pathList.add(prefix + i);
+        }
+        this.paths = pathList.toArray(new String[0]);
+        List<String> keyList = Config.getList(p, "load.keys");
+        this.keys = keyList.isEmpty() ? new String[] {"password"} : keyList.toArray(new String[0]);
+
+        this.zipfSkew = Config.getDouble(p, "load.zipfSkew", 0.99d);
+        if (zipfSkew < 0d) throw new IllegalArgumentException("load.zipfSkew must be >= 0: " + zipfSkew);
+        this.zipfCdf = zipfSkew > 0d ? zipfCdf(paths.length, zipfSkew) : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        run(args.length > 0 ? args[0] : "./vault_token.properties");
+    }
+
+    /** Runs one load test with the given config file and prints the report. */
+    public static void run(String configFile) throws Exception {
+        Properties p = new File(configFile).isFile() ? Config.load(configFile) : new Properties();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("load.") || name.startsWith("secrets.") || name.startsWith("vault.")) {
+                p.setProperty(name, System.getProperty(name));
+            }
+        }
+        new LoadGenerator(p).run();
+    }
+
+    private void run() throws Exception {
+        FakeVaultServer fake = null;
+        SecretsClient client = null;
+        try {
+            if (Config.getBoolean(p, "load.fakeVault", false)) {
+                if (!Boolean.getBoolean("sun.net.httpserver.nodelay")) {
+                    System.out.println("Run with -Dsun.net.httpserver.nodelay=true: without it the fake Vault"
+                            + " adds ~40 ms to keep-alive responses");
+                }
+                fake = startFakeVault();
+                Properties fakeProps = fake.clientProperties();
+                for (String name : fakeProps.stringPropertyNames()) {
+                    if (name.startsWith("vault.")) p.setProperty(name, fakeProps.getProperty(name)); // keeps secrets.provider, e.g. a chain
+                }
+            }
+            SecretsMetrics clientMetrics = new SecretsMetrics();
+            client = SecretsClientFactory.create(p, clientMetrics);
+            String provider = Config.get(p, "secrets.provider", "vault");
+            SecretsInstrumentation.Timer latency = load.timer("load.latency", provider, "");
+            SecretsInstrumentation.Counter errors = load.counter("load.errors", provider, "");
+
+            System.out.println(String.format("Load test: provider=%s threads=%d%s warmup=%ds duration=%ds rate=%s"
+                            + " paths=%d keys=%d zipfSkew=%s cache=%s",
+                    provider, threads, virtualThreads ? " (virtual)" : "",
+                    TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                    rate > 0d ? rate + "/s" : "unlimited", paths.length, keys.length, zipfSkew,
+                    Config.get(p, "secrets.cache.impl", "lru")));
+
+            long start = System.nanoTime();
+            measureFrom = start + warmupNanos;
+            long end = measureFrom + durationNanos;
+            List<Thread> workers = new ArrayList<Thread>(threads);
+            ThreadFactory factory = threadFactory();
+            for (int w = 0; w < threads; w++) {
+                final SecretsClient c = client;
+                final long firstCall = start + (rate > 0d ? (long) (w * 1e9d / rate) : 0L);
+                Thread t = factory.newThread(() -> work(c, latency, errors, firstCall, end));
+                workers.add(t);
+                t.start();
+            }
+
+            LockSupport.parkNanos(measureFrom - System.nanoTime());
+            MetricsSnapshot before = clientMetrics.snapshot();
+            long[] fakeBefore = fakeCounts(fake);
+            for (Thread t : workers) t.join();
+            long elapsed = System.nanoTime() - measureFrom;
+            MetricsSnapshot after = clientMetrics.snapshot();
+            long[] fakeAfter = fakeCounts(fake);
+
+            report(load.snapshot(), before, after, elapsed, fakeBefore, fakeAfter);
+        } finally {
+            if (client != null) client.close();
+            if (fake != null) fake.close();
+        }
+    }
+
+    private void work(SecretsClient client, SecretsInstrumentation.Timer latency, SecretsInstrumentation.Counter errors,
+                      long firstCall, long end) {
+        long interval = rate > 0d ? (long) (threads * 1e9d / rate) : 0L;
+        long next = firstCall;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            long scheduled;
+            if (interval > 0L) {
+                scheduled = next;
+                next += interval;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0L) LockSupport.parkNanos(wait);
+            } else {
+                scheduled = System.nanoTime();
+            }
+            if (scheduled >= end) return;
+
+            String path = paths[nextPath(random)];
+            String key = keys[keys.length == 1 ? 0 : random.nextInt(keys.length)];
+            String error = null;
+            try {
+                client.getRequired(path, key);
+            } catch (SecretException | RuntimeException e) {
+                error = e.toString();
+            }
+            if (scheduled >= measureFrom) {
+                latency.record(System.nanoTime() - scheduled);
+                if (error != null) {
+                    errors.increment();
+                    if (firstError == null) firstError = error;
+                }
+            }
+        }
+    }
+
+    private int nextPath(ThreadLocalRandom random) {
+        if (zipfCdf == null) return random.nextInt(paths.length);
+        int i = Arrays.binarySearch(zipfCdf, random.nextDouble());
+        return Math.min(paths.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    /** Cumulative Zipf weights: entry i = P(rank <= i). */
+    private static double[] zipfCdf(int n, double skew) {
+        double[] cdf = new double[n];
+        double sum = 0d;
+        for (int i = 0; i < n; i++) {
+            sum += 1d / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) cdf[i] /= sum;
+        return cdf;
+    }
+
+    private ThreadFactory threadFactory() {
+        if (virtualThreads) {
+            try {
+                // Thread.ofVirtual().factory(), by reflection so this still compiles and runs on Java 8
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("load.virtualThreads needs Java 21 (running " + System.getProperty("java.version")
+                        + "), using platform threads");
+            }
+        }
+        return new DaemonThreadFactory("load");
+    }
+
+    private FakeVaultServer startFakeVault() throws IOException {
+        FakeVaultServer fake = FakeVaultServer.start(Config.get(p, "vault.mount", "secret"));
+        fake.latencyMicros(Config.getLong(p, "load.fakeVault.latencyMicros", 0L));
+        fake.errorRate(Config.getDouble(p, "load.fakeVault.errorRate", 0d));
+        for (String path : paths) {
+            Map<String, String> data = new LinkedHashMap<String, String>();
+            for (String key : keys) data.put(key, key + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+            fake.putSecret(path, data);
+        }
+        return fake;
+    }
+
+    private static long[] fakeCounts(FakeVaultServer fake) {
+        if (fake == null) return null;
+        return new long[] {fake.kvReadCount(), fake.metadataReadCount(), fake.loginCount(), fake.renewalCount(),
+                fake.injectedErrorCount()};
+    }
+
+    private void report(MetricsSnapshot measured, MetricsSnapshot before, MetricsSnapshot after, long elapsedNanos,
+                        long[] fakeBefore, long[] fakeAfter) {
+        double seconds = elapsedNanos / 1e9d;
+        MetricsSnapshot.TimerValue latency = measured.timer("load.latency");
+        long ops = latency == null ? 0L : latency.count();
+        long errors = measured.counter("load.errors");
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("  throughput   %.1f calls/s (%d calls in %.1fs, %d errors)%n",
+                ops / seconds, ops, seconds, errors));
+        if (firstError != null) sb.append("  first error  ").append(firstError).append('\n');
+        if (latency != null) {
+            sb.append(String.format("  latency ms   mean %.3f  p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+                    latency.meanNanos() / 1e6d, latency.percentileNanos(0.5d) / 1e6d, latency.percentileNanos(0.9d) / 1e6d,
+                    latency.percentileNanos(0.99d) / 1e6d, latency.percentileNanos(0.999d) / 1e6d,
+                    latency.maxNanos() / 1e6d));
+        }
+
+        long hits = delta(before, after, SecretsInstrumentation.CACHE_HIT);
+        long misses = delta(before, after, SecretsInstrumentation.CACHE_MISS);
+        if (hits + misses > 0L) {
+            sb.append(String.format("  cache        hit ratio %.2f%% (%d hits, %d misses, %d stale, %d evictions)%n",
+                    100d * hits / (hits + misses), hits, misses,
+                    delta(before, after, SecretsInstrumentation.CACHE_STALE),
+                    delta(before, after, SecretsInstrumentation.CACHE_EVICTION)));
+        } else {
+            sb.append("  cache        no cache counters for this provider\n");
+        }
+
+        long kvReads = timerDelta(before, after, SecretsInstrumentation.KV_READ);
+        long metadataReads = timerDelta(before, after, SecretsInstrumentation.KV_METADATA_READ);
+        long logins = timerDelta(before, after, SecretsInstrumentation.LOGIN);
+        long renewals = timerDelta(before, after, SecretsInstrumentation.TOKEN_RENEW);
+        sb.append(String.format("  vault calls  %.1f/s (%d KV reads, %d metadata reads, %d logins, %d renewals, %d rejected)%n",
+                (kvReads + metadataReads + logins + renewals) / seconds, kvReads, metadataReads, logins, renewals,
+                delta(before, after, SecretsInstrumentation.KV_REJECTED)));
+        if (fakeBefore != null) {
+            long[] d = new long[fakeBefore.length];
+            for (int i = 0; i < d.length; i++) d[i] = fakeAfter[i] - fakeBefore[i];
+            sb.append(String.format("  fake vault   %.1f requests/s (%d KV reads, %d metadata reads, %d logins, %d renewals, %d injected 503s)%n",
+                    (d[0] + d[1] + d[2] + d[3]) / seconds, d[0], d[1], d[2], d[3], d[4]));
+        }
+        System.out.print(sb);
+    }
+
+    private static long delta(MetricsSnapshot before, MetricsSnapshot after, String counter) {
+        return after.counter(counter) - before.counter(counter);
+    }
+
+    private static long timerDelta(MetricsSnapshot before, MetricsSnapshot after, String timer) {
+        MetricsSnapshot.TimerValue b = before.timer(timer);
+        MetricsSnapshot.TimerValue a = after.timer(timer);
+        return (a == null ? 0L : a.count()) - (b == null ? 0L : b.count());
+    }
+}